@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.world;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link ScalarEmissionKernel} against {@link VectorEmissionKernel} on
+ * batches the size of large groups of emitters, such as a lava ocean in the
+ * nether. The benchmarks are compiled and run on Java 17 with the
+ * {@code jdk.incubator.vector} module added.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EmissionKernelBenchmark {
+
+    @Param({"1024", "4096", "10240"})
+    private int count;
+
+    private double[] dx, dy, dz;
+    private double[] emission, falloff;
+    private double[] values;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(16);
+        dx = new double[count];
+        dy = new double[count];
+        dz = new double[count];
+        emission = new double[count];
+        falloff = new double[count];
+        values = new double[count];
+        for (int i = 0; i < count; i++) {
+            dx[i] = random.nextInt(33) - 16;
+            dy[i] = random.nextInt(17) - 8;
+            dz[i] = random.nextInt(33) - 16;
+            emission[i] = random.nextDouble() * 40 - 10;
+            falloff[i] = 1 + random.nextInt(8);
+        }
+    }
+
+    @Benchmark
+    public double scalar() {
+        ScalarEmissionKernel.falloff(dx, dy, dz, emission, falloff, values, count);
+        return ScalarEmissionKernel.sum(values, count);
+    }
+
+    @Benchmark
+    public double vector() {
+        VectorEmissionKernel.falloff(dx, dy, dz, emission, falloff, values, count);
+        return VectorEmissionKernel.sum(values, count);
+    }
+}
@@ -177,6 +177,10 @@ public class EternalEngine {
         return defaultTemps;
     }
 
+    public UserWorker getUserWorker() {
+        return userWorker;
+    }
+
     public WorldProvider getWorldProvider() {
         return worldProvider;
     }
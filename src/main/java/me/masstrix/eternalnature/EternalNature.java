@@ -110,7 +110,8 @@ public class EternalNature extends JavaPlugin {
         registerListeners(new MoveListener(this), new ConnectionListener(this),
                 new ConsumeListener(this), new BlockListener(this),
                 new ItemListener(this), new DeathListener(this),
-                new InteractListener(this));
+                new InteractListener(this), new ChunkListener(this),
+                new EquipmentListener(this));
 
         // Only check for updates if enabled.
         if (systemConfig.isEnabled(ConfigOption.UPDATES_CHECK)) {
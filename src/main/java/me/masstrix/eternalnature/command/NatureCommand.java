@@ -21,9 +21,12 @@ import me.masstrix.eternalnature.PluginData;
 import me.masstrix.eternalnature.config.ConfigOption;
 import me.masstrix.eternalnature.core.render.LeafParticle;
 import me.masstrix.eternalnature.core.temperature.TempModifierType;
-import me.masstrix.eternalnature.core.temperature.Temperatures;
+import me.masstrix.eternalnature.core.temperature.TemperatureSnapshot;
+import me.masstrix.eternalnature.core.world.TemperatureZone;
+import me.masstrix.eternalnature.core.world.TemperatureZones;
 import me.masstrix.eternalnature.core.world.WorldData;
 import me.masstrix.eternalnature.core.world.WorldProvider;
+import me.masstrix.eternalnature.core.world.ZoneSample;
 import me.masstrix.eternalnature.data.UserData;
 import me.masstrix.eternalnature.menus.Menus;
 import me.masstrix.eternalnature.util.BuildInfo;
@@ -33,6 +36,7 @@ import net.md_5.bungee.api.chat.BaseComponent;
 import net.md_5.bungee.api.chat.ClickEvent;
 import net.md_5.bungee.api.chat.HoverEvent;
 import net.md_5.bungee.api.chat.TextComponent;
+import org.bukkit.Location;
 import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
 
@@ -85,6 +89,7 @@ public class NatureCommand extends EternalCommand {
                 msg("&a/eternal world reloadAll &7- Reloads all worlds.");
                 msg("&a/eternal world " + world + " reload &7- Reloads the worlds configs.");
                 msg("&a/eternal world " + world + " info &7- Displays info about that world.");
+                msg("&a/eternal world " + world + " zone &7- Manages temperature zones in that world.");
                 msg("&a/eternal world " + world + " makeCustomConfig &7- " +
                         "Makes a custom temperature config for world specific configuration.");
                 msg("");
@@ -144,7 +149,7 @@ public class NatureCommand extends EternalCommand {
             }
             else if (sub.equalsIgnoreCase("info")) {
                 WorldData data = provider.getWorld(world);
-                Temperatures t = data.getTemperatures();
+                TemperatureSnapshot t = data.getTemperatures().getSnapshot();
                 msg("");
                 msg("     &2&lEternal Nature");
                 msg("     &6&o" + world + "'s info");
@@ -153,6 +158,7 @@ public class NatureCommand extends EternalCommand {
                 msg("Biomes Loaded: &6" + t.count(TempModifierType.BIOME));
                 msg("Blocks Loaded: &6" + t.count(TempModifierType.BLOCK));
                 msg("Clothing Loaded: &6" + t.count(TempModifierType.CLOTHING));
+                msg("Zones Loaded: &6" + data.getZones().size());
                 msg("");
                 if (wasPlayer()) {
                     Player player = (Player) getSender();
@@ -161,6 +167,9 @@ public class NatureCommand extends EternalCommand {
                     msg("");
                 }
             }
+            else if (sub.equalsIgnoreCase("zone")) {
+                zoneCommand(provider.getWorld(world), world, args);
+            }
             else {
                 msg(PluginData.PREFIX + "&cInvalid use. For help use /eternal world");
             }
@@ -266,6 +275,113 @@ public class NatureCommand extends EternalCommand {
         }
     }
 
+    /**
+     * Handles the {@code /eternal world <world> zone} commands.
+     *
+     * @param data  world the zones are in.
+     * @param world name of the world.
+     * @param args  arguments of the command.
+     */
+    private void zoneCommand(WorldData data, String world, String[] args) {
+        TemperatureZones zones = data.getZones();
+        String cmd = "/eternal world " + world + " zone";
+        if (args.length < 4) {
+            msg("");
+            msg("     &2&lEternal Nature");
+            msg("     &6&o" + world + "'s zones");
+            msg("");
+            msg("&a" + cmd + " list &7- Lists all zones in the world.");
+            msg("&a" + cmd + " here &7- Lists the zones you are in.");
+            msg("&a" + cmd + " create <name> <x1> <y1> <z1> <x2> <y2> <z2> &7- Creates a zone between two corners.");
+            msg("&a" + cmd + " remove <name> &7- Removes a zone.");
+            msg("&a" + cmd + " offset <name> <temp> &7- Sets how much a zone adds to the temperature.");
+            msg("&a" + cmd + " climate <name> <temp|none> &7- Sets a fixed climate in a zone.");
+            msg("&a" + cmd + " priority <name> <priority> &7- Sets whose climate is used where zones overlap.");
+            msg("");
+            return;
+        }
+
+        String action = args[3];
+        if (action.equalsIgnoreCase("list")) {
+            msg("");
+            msg("     &2&lZones in " + world);
+            zones.getZones().forEach(this::zoneInfo);
+            msg("");
+            return;
+        }
+        else if (action.equalsIgnoreCase("here")) {
+            if (!wasPlayer()) {
+                msg("Zones here can only be checked in game.");
+                return;
+            }
+            Location loc = ((Player) getSender()).getLocation();
+            ZoneSample sample = new ZoneSample(true);
+            zones.sample(loc.getBlockX(), loc.getBlockY(), loc.getBlockZ(), sample);
+            msg("");
+            msg("     &2&lZones you are in");
+            sample.getZones().forEach(this::zoneInfo);
+            msg("");
+            return;
+        }
+
+        if (args.length < 5) {
+            msg(PluginData.PREFIX + "&cInvalid use. For help use " + cmd);
+            return;
+        }
+        String name = args[4];
+
+        try {
+            if (action.equalsIgnoreCase("create") && args.length == 11) {
+                // Names are used as keys when zones are saved so they can't be split by dots.
+                if (name.contains(".")) {
+                    msg(PluginData.PREFIX + "&cZone names can not contain a &e.&c.");
+                    return;
+                }
+                TemperatureZone zone = new TemperatureZone(name,
+                        Integer.parseInt(args[5]), Integer.parseInt(args[6]), Integer.parseInt(args[7]),
+                        Integer.parseInt(args[8]), Integer.parseInt(args[9]), Integer.parseInt(args[10]));
+                if (zones.add(zone)) msg(PluginData.PREFIX + "&aCreated zone &e" + name + "&a.");
+                else msg(PluginData.PREFIX + "&cA zone named &e" + name + "&c already exists.");
+                return;
+            }
+            else if (action.equalsIgnoreCase("remove") && args.length == 5) {
+                if (zones.remove(name) != null) msg(PluginData.PREFIX + "&aRemoved zone &e" + name + "&a.");
+                else msg(PluginData.PREFIX + "&cNo zone was found with that name.");
+                return;
+            }
+
+            TemperatureZone zone = zones.get(name);
+            if (zone == null) {
+                msg(PluginData.PREFIX + "&cNo zone was found with that name.");
+                return;
+            }
+            if (action.equalsIgnoreCase("offset") && args.length == 6) {
+                zone.setOffset(Double.parseDouble(args[5]));
+            }
+            else if (action.equalsIgnoreCase("climate") && args.length == 6) {
+                zone.setClimate(args[5].equalsIgnoreCase("none") ? Double.NaN : Double.parseDouble(args[5]));
+            }
+            else if (action.equalsIgnoreCase("priority") && args.length == 6) {
+                zone.setPriority(Integer.parseInt(args[5]));
+            }
+            else {
+                msg(PluginData.PREFIX + "&cInvalid use. For help use " + cmd);
+                return;
+            }
+            zones.save();
+            msg(PluginData.PREFIX + "&aUpdated zone &e" + zone.getName() + "&a.");
+        } catch (NumberFormatException e) {
+            msg(PluginData.PREFIX + "&cInvalid number. For help use " + cmd);
+        }
+    }
+
+    private void zoneInfo(TemperatureZone zone) {
+        msg(" &2• &f" + zone.getName() + " &7(" + zone.getMinX() + ", " + zone.getMinY() + ", " + zone.getMinZ()
+                + " to " + zone.getMaxX() + ", " + zone.getMaxY() + ", " + zone.getMaxZ() + ") offset: &6"
+                + zone.getOffset() + "&7 climate: &6" + (zone.hasClimate() ? zone.getClimate() : "none")
+                + "&7 priority: &6" + zone.getPriority());
+    }
+
     @Override
     public List<String> tabComplete(String[] args) {
         if (args.length == 1) {
@@ -284,7 +400,19 @@ public class NatureCommand extends EternalCommand {
                 }
 
                 if (args.length == 3 && names.contains(args[1])) {
-                    return Arrays.asList("reload", "makeCustomConfig", "info");
+                    return Arrays.asList("reload", "makeCustomConfig", "info", "zone");
+                }
+
+                if (args.length == 4 && names.contains(args[1]) && args[2].equalsIgnoreCase("zone")) {
+                    return Arrays.asList("list", "here", "create", "remove", "offset", "climate", "priority");
+                }
+
+                if (args.length == 5 && names.contains(args[1]) && args[2].equalsIgnoreCase("zone")
+                        && !args[3].equalsIgnoreCase("create")) {
+                    List<String> zones = new ArrayList<>();
+                    plugin.getEngine().getWorldProvider().getWorld(args[1]).getZones().getZones()
+                            .forEach(zone -> zones.add(zone.getName()));
+                    return zones;
                 }
 
                 if (args.length == 3) {
@@ -78,6 +78,35 @@ public enum ConfigOption {
     TEMPERATURE_USE_WEATHER("temperature.scanning.use-weather", true),
     TEMPERATURE_USE_ITEMS("temperature.scanning.use-items", true),
     TEMPERATURE_USE_ENVIRO("temperature.scanning.use-environment", true),
+    TEMPERATURE_SAMPLE_TTL("temperature.scanning.sample-cache-ttl", 1000),
+    TEMPERATURE_DISK_CACHE("temperature.scanning.disk-cache", true),
+    TEMPERATURE_INDEX_REFRESH("temperature.scanning.index-refresh", 120),
+    TEMPERATURE_SPREAD_SAMPLING("temperature.scanning.spread-sampling", true),
+    TEMPERATURE_SPHERICAL_SCAN("temperature.scanning.spherical", false),
+    TEMPERATURE_FAR_FIELD("temperature.scanning.far-field", true),
+    TEMPERATURE_SCAN_AREA("temperature.scanning.area", 11),
+    TEMPERATURE_SCAN_HEIGHT("temperature.scanning.height", 5),
+
+    // Simulation
+    TEMPERATURE_SIMULATION("temperature.simulation.enabled", false),
+    TEMPERATURE_SIMULATION_BUDGET("temperature.simulation.cell-budget", 4096),
+    TEMPERATURE_SIMULATION_LOSS("temperature.simulation.heat-loss", 1.0),
+    TEMPERATURE_SIMULATION_SKY_LOSS("temperature.simulation.sky-loss", 2.0),
+
+    // Enclosures
+    TEMPERATURE_ENCLOSURE("temperature.enclosure.enabled", true),
+    TEMPERATURE_ENCLOSURE_BUDGET("temperature.enclosure.voxel-budget", 2048),
+
+    // Body heat
+    TEMPERATURE_BODY_HEAT("temperature.body-heat.enabled", true),
+    TEMPERATURE_BODY_HEAT_RADIUS("temperature.body-heat.radius", 3.0),
+    TEMPERATURE_BODY_HEAT_AMOUNT("temperature.body-heat.per-entity", 0.4),
+    TEMPERATURE_BODY_HEAT_MAX("temperature.body-heat.max", 3.0),
+
+    // Prefetching
+    TEMPERATURE_PREFETCH("temperature.prefetch.enabled", true),
+    TEMPERATURE_PREFETCH_SECONDS("temperature.prefetch.seconds", 3.0),
+    TEMPERATURE_PREFETCH_IN_FLIGHT("temperature.prefetch.max-in-flight", 8),
 
     //
     // Hydration section
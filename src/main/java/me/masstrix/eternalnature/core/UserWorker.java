@@ -22,11 +22,31 @@ import me.masstrix.eternalnature.data.UserData;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.scheduler.BukkitTask;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Ticks all cached users. Users gather what they need on the main thread, any
+ * heavy work is then computed in parallel on a pool of threads and the results
+ * are applied back on the main thread on the next tick.
+ */
 public class UserWorker implements EternalWorker {
 
+    /**
+     * How many ticks there are between each time users are ticked.
+     */
+    public static final int UPDATE_INTERVAL = 10;
+
     private EternalNature plugin;
     private EternalEngine engine;
     private BukkitTask task;
+    private BukkitTask applyTask;
+    private ForkJoinPool pool;
+    private final Queue<Runnable> results = new ConcurrentLinkedQueue<>();
+    private long ticks;
 
     public UserWorker(EternalNature plugin, EternalEngine engine) {
         this.plugin = plugin;
@@ -35,17 +55,77 @@ public class UserWorker implements EternalWorker {
 
     @Override
     public void start() {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        pool = new ForkJoinPool(threads, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("EternalNature-User-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+
         task = new BukkitRunnable() {
             @Override
             public void run() {
                 engine.getCashedUsers().forEach(UserData::tick);
             }
-        }.runTaskTimer(plugin, 0, 10);
+        }.runTaskTimer(plugin, 0, UPDATE_INTERVAL);
+
+        applyTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                ticks++;
+                applyResults();
+            }
+        }.runTaskTimer(plugin, 1, 1);
+    }
+
+    /**
+     * Computes a task off the main thread. Once it is done the result is applied
+     * on the main thread during the next tick. If the worker is not running the
+     * task is computed and applied straight away.
+     *
+     * @param compute task to run off the main thread.
+     * @param apply   task to run on the main thread once compute is done.
+     */
+    public void submit(Runnable compute, Runnable apply) {
+        if (pool != null && !pool.isShutdown()) {
+            try {
+                pool.execute(() -> {
+                    try {
+                        compute.run();
+                    } finally {
+                        results.add(apply);
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException ignored) {}
+        }
+        compute.run();
+        apply.run();
+    }
+
+    /**
+     * @return how many ticks the worker has been running for.
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Applies the results of all finished tasks.
+     */
+    private void applyResults() {
+        Runnable result;
+        while ((result = results.poll()) != null) {
+            result.run();
+        }
     }
 
     @Override
     public void end() {
         if (task != null) task.cancel();
+        if (applyTask != null) applyTask.cancel();
+        if (pool != null) pool.shutdownNow();
+        results.clear();
 
         // End everyone's session and save it.
         for (UserData user : engine.getCashedUsers()) {
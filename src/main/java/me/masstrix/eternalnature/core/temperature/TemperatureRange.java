@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.temperature;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the lowest and highest temperature that has been reached.
+ * Values can be accepted from any thread. Accepting a value that is inside the
+ * current range is only a read, the range is only written to when a new extreme
+ * is found.
+ */
+public class TemperatureRange {
+
+    private final AtomicLong min;
+    private final AtomicLong max;
+    private volatile boolean dirty;
+
+    /**
+     * @param min starting min temperature.
+     * @param max starting max temperature.
+     */
+    public TemperatureRange(double min, double max) {
+        this.min = new AtomicLong(Double.doubleToRawLongBits(min));
+        this.max = new AtomicLong(Double.doubleToRawLongBits(max));
+    }
+
+    /**
+     * Expands the range to include a temperature.
+     *
+     * @param temp temperature to include.
+     */
+    public void accept(double temp) {
+        if (Double.isNaN(temp)) return;
+        long current;
+        while (temp > Double.longBitsToDouble(current = max.get())) {
+            if (max.compareAndSet(current, Double.doubleToRawLongBits(temp))) {
+                dirty = true;
+                return;
+            }
+        }
+        while (temp < Double.longBitsToDouble(current = min.get())) {
+            if (min.compareAndSet(current, Double.doubleToRawLongBits(temp))) {
+                dirty = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the lowest temperature reached.
+     */
+    public double getMin() {
+        return Double.longBitsToDouble(min.get());
+    }
+
+    /**
+     * @return the highest temperature reached.
+     */
+    public double getMax() {
+        return Double.longBitsToDouble(max.get());
+    }
+
+    /**
+     * Clears the changed flag.
+     *
+     * @return if the range has changed since the last time this was called.
+     */
+    public boolean clearDirty() {
+        if (!dirty) return false;
+        dirty = false;
+        return true;
+    }
+}
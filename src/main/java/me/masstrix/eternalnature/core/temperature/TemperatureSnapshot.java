@@ -0,0 +1,402 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.temperature;
+
+import me.masstrix.eternalnature.util.WorldTime;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A complete set of loaded temperature data. Snapshots are never changed once
+ * they have been created, when the data is reloaded a new snapshot replaces the
+ * old one. Anything doing a calculation should hold onto the same snapshot for
+ * the whole calculation so it never sees half loaded data. Snapshots can be
+ * read from any thread.
+ * <p>
+ * Block emission is looked up by a state id. For most blocks this is the ordinal
+ * of their material, blocks with state qualified entries such as
+ * {@code furnace[lit=true]} get their own id after the materials. Only blocks of
+ * a material that has state qualified entries need their block data to find
+ * their state id, which is cached for each block data that is seen.
+ */
+public final class TemperatureSnapshot {
+
+    private static final Material[] MATERIAL_VALUES = Material.values();
+    private static final int MATERIALS = MATERIAL_VALUES.length;
+    private static final int TYPES = TempModifierType.values().length;
+
+    private final int revision;
+    private final Map<TempModifierType, Map<Material, TemperatureModifier>> modifiers;
+    private final Map<Biome, BiomeModifier> biomeModifiers;
+    private final BiomeModifier biomeDefault;
+    private final double scalar;
+    private final double caveModifier;
+    private final double directSunAmplifier;
+    private final int dayResolution;
+    private final int dataHash;
+
+    // Compiled lookup tables indexed by [type ordinal][material ordinal].
+    private final double[][] emissionTable = new double[TYPES][];
+    private final double[][] falloffTable = new double[TYPES][];
+    private final BitSet[] modifierFlags = new BitSet[TYPES];
+
+    // Block state qualified entries. State ids of the entries for a material are
+    // indexed by the materials ordinal and are null if it has no entries.
+    private final BlockData[] statePatterns;
+    private final int[][] materialStates = new int[MATERIALS][];
+    private final Map<BlockData, Integer> stateCache = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an empty snapshot with only the built in default biome temperature.
+     * This is used until any data has been loaded.
+     */
+    TemperatureSnapshot() {
+        this(0, Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(),
+                null, 3, 0.7, 1.3, 240);
+    }
+
+    TemperatureSnapshot(int revision,
+                        Map<TempModifierType, Map<Material, TemperatureModifier>> modifiers,
+                        Map<BlockData, TemperatureModifier> blockStates,
+                        Map<Biome, BiomeModifier> biomeModifiers,
+                        BiomeModifier biomeDefault,
+                        double scalar,
+                        double caveModifier,
+                        double directSunAmplifier,
+                        int dayResolution) {
+        this.revision = revision;
+        this.scalar = scalar;
+        this.caveModifier = caveModifier;
+        this.directSunAmplifier = directSunAmplifier;
+        this.dayResolution = dayResolution;
+        this.biomeModifiers = Collections.unmodifiableMap(new HashMap<>(biomeModifiers));
+
+        if (biomeDefault == null) {
+            biomeDefault = new BiomeModifier("default");
+            biomeDefault
+                    .put(WorldTime.MORNING, 10)
+                    .put(WorldTime.MID_DAY, 18)
+                    .put(WorldTime.DUSK, 15)
+                    .put(WorldTime.MID_NIGHT, 12);
+            biomeDefault.compile(dayResolution);
+        }
+        this.biomeDefault = biomeDefault;
+
+        Map<TempModifierType, Map<Material, TemperatureModifier>> copy = new EnumMap<>(TempModifierType.class);
+        for (TempModifierType type : TempModifierType.values()) {
+            Map<Material, TemperatureModifier> mods = new EnumMap<>(Material.class);
+            if (modifiers.containsKey(type)) mods.putAll(modifiers.get(type));
+            copy.put(type, Collections.unmodifiableMap(mods));
+            compileTable(type, mods);
+        }
+        this.modifiers = Collections.unmodifiableMap(copy);
+        this.statePatterns = blockStates.keySet().toArray(new BlockData[0]);
+        compileStates(blockStates);
+
+        int block = TempModifierType.BLOCK.ordinal();
+        int hash = MATERIALS;
+        hash = 31 * hash + Arrays.hashCode(emissionTable[block]);
+        hash = 31 * hash + Arrays.hashCode(falloffTable[block]);
+        for (BlockData pattern : statePatterns) {
+            hash = 31 * hash + pattern.getAsString().hashCode();
+        }
+        this.dataHash = hash;
+    }
+
+    /**
+     * Adds the block state qualified entries to the end of the block tables. Each
+     * entry gets the next state id after the materials in the order they were
+     * loaded, which is also the order they are matched in.
+     *
+     * @param blockStates block state entries to compile.
+     */
+    private void compileStates(Map<BlockData, TemperatureModifier> blockStates) {
+        int t = TempModifierType.BLOCK.ordinal();
+        double[] emission = Arrays.copyOf(emissionTable[t], MATERIALS + statePatterns.length);
+        double[] falloff = Arrays.copyOf(falloffTable[t], MATERIALS + statePatterns.length);
+
+        for (int i = 0; i < statePatterns.length; i++) {
+            BlockData pattern = statePatterns[i];
+            TemperatureModifier mod = blockStates.get(pattern);
+            int id = MATERIALS + i;
+            emission[id] = mod.getEmission();
+            falloff[id] = mod instanceof BlockTemperature ? ((BlockTemperature) mod).getScalar() : scalar;
+
+            int m = pattern.getMaterial().ordinal();
+            int[] ids = materialStates[m];
+            ids = ids == null ? new int[1] : Arrays.copyOf(ids, ids.length + 1);
+            ids[ids.length - 1] = id;
+            materialStates[m] = ids;
+        }
+        emissionTable[t] = emission;
+        falloffTable[t] = falloff;
+    }
+
+    /**
+     * Compiles the modifiers of a type into flat tables indexed by the materials
+     * ordinal. This makes looking up a materials emission a single array read.
+     *
+     * @param type type of modifier to compile.
+     * @param mods modifiers of that type.
+     */
+    private void compileTable(TempModifierType type, Map<Material, TemperatureModifier> mods) {
+        double[] emission = new double[MATERIALS];
+        double[] falloff = new double[MATERIALS];
+        BitSet flags = new BitSet(MATERIALS);
+
+        for (Map.Entry<Material, TemperatureModifier> entry : mods.entrySet()) {
+            int i = entry.getKey().ordinal();
+            TemperatureModifier mod = entry.getValue();
+            emission[i] = mod.getEmission();
+            falloff[i] = mod instanceof BlockTemperature ? ((BlockTemperature) mod).getScalar() : scalar;
+            flags.set(i);
+        }
+
+        int t = type.ordinal();
+        emissionTable[t] = emission;
+        falloffTable[t] = falloff;
+        modifierFlags[t] = flags;
+    }
+
+    /**
+     * @return the revision of this data. This is unique between all snapshots.
+     */
+    public int getRevision() {
+        return revision;
+    }
+
+    /**
+     * Returns a hash of the block emission data. Unlike the revision this stays the
+     * same between restarts if the data has not changed.
+     *
+     * @return a hash of the block emission data.
+     */
+    public int getDataHash() {
+        return dataHash;
+    }
+
+    /**
+     * Returns a modifier for a material.
+     *
+     * @param material material to get a modifier for.
+     * @param type     type of modifier to get.
+     * @return the modifier or for this material of {@code type} or null
+     *         if the material has no modifiers applied to it.
+     */
+    public TemperatureModifier getModifier(Material material, TempModifierType type) {
+        return modifiers.get(type).get(material);
+    }
+
+    /**
+     * Returns a biome temperature modifier.
+     *
+     * @param biome biome to get the modifier of.
+     * @return the biomes modifier or the default if it has none.
+     */
+    public BiomeModifier getModifier(Biome biome) {
+        return biomeModifiers.getOrDefault(biome, biomeDefault);
+    }
+
+    /**
+     * Returns the emission value for the material.
+     *
+     * @param material material to get the emission value of.
+     * @param type     type of modifier this is for.
+     * @return the emission value of this material or 0 if it has none.
+     */
+    public double getEmission(Material material, TempModifierType type) {
+        return emissionTable[type.ordinal()][material.ordinal()];
+    }
+
+    /**
+     * Returns the falloff scalar for the material. This is how quickly the
+     * emission of the material falls off over distance.
+     *
+     * @param material material to get the falloff of.
+     * @param type     type of modifier this is for.
+     * @return the falloff scalar of this material or 0 if it has no modifier.
+     */
+    public double getFalloff(Material material, TempModifierType type) {
+        return falloffTable[type.ordinal()][material.ordinal()];
+    }
+
+    /**
+     * @param material material to check.
+     * @param type     type of modifier to check for.
+     * @return if the material has a modifier of {@code type}.
+     */
+    public boolean hasModifier(Material material, TempModifierType type) {
+        return modifierFlags[type.ordinal()].get(material.ordinal());
+    }
+
+    /**
+     * @param material material to check.
+     * @return if the material has any block state qualified entries. Only blocks
+     *         of these materials need their block data to find their state id.
+     */
+    public boolean hasStates(Material material) {
+        return materialStates[material.ordinal()] != null;
+    }
+
+    /**
+     * @param material material to get the state id of.
+     * @return the state id of the material without any block state.
+     */
+    public int getStateId(Material material) {
+        return material.ordinal();
+    }
+
+    /**
+     * Returns the state id of some block data. This is the first state qualified
+     * entry the data matches or the id of its material if it matches none. Results
+     * are cached so each distinct block data is only matched once.
+     *
+     * @param data block data to get the state id of.
+     * @return the state id of the block data.
+     */
+    public int getStateId(BlockData data) {
+        Material material = data.getMaterial();
+        int[] ids = materialStates[material.ordinal()];
+        if (ids == null) return material.ordinal();
+        Integer cached = stateCache.get(data);
+        if (cached != null) return cached;
+
+        int id = material.ordinal();
+        for (int state : ids) {
+            if (data.matches(statePatterns[state - MATERIALS])) {
+                id = state;
+                break;
+            }
+        }
+        stateCache.put(data, id);
+        return id;
+    }
+
+    /**
+     * Returns the state id of a block. The blocks data is only read if its
+     * material has state qualified entries.
+     *
+     * @param block block to get the state id of.
+     * @return the state id of the block.
+     */
+    public int getStateId(Block block) {
+        Material material = block.getType();
+        return hasStates(material) ? getStateId(block.getBlockData()) : material.ordinal();
+    }
+
+    /**
+     * @param state state id to get the material of.
+     * @return the material of the state id.
+     */
+    public Material getStateMaterial(int state) {
+        return state < MATERIALS ? MATERIAL_VALUES[state] : statePatterns[state - MATERIALS].getMaterial();
+    }
+
+    /**
+     * @param state state id of a block.
+     * @return the block emission of the state or 0 if it has none.
+     */
+    public double getBlockEmission(int state) {
+        return emissionTable[TempModifierType.BLOCK.ordinal()][state];
+    }
+
+    /**
+     * @param state state id of a block.
+     * @return the block falloff scalar of the state or 0 if it has no modifier.
+     */
+    public double getBlockFalloff(int state) {
+        return falloffTable[TempModifierType.BLOCK.ordinal()][state];
+    }
+
+    /**
+     * Returns which step of the day cycle the world is currently in. Biome
+     * temperatures only change when the world moves into a new step.
+     *
+     * @param world world to get the step for.
+     * @return the current step of the day cycle.
+     */
+    public int getDayBucket(World world) {
+        long time = world.getTime() % TimeTemperature.TIME_IN_DAY;
+        return (int) (time * dayResolution / TimeTemperature.TIME_IN_DAY);
+    }
+
+    /**
+     * Returns the current temperature of a biome in a world.
+     *
+     * @param biome biome to get the temperature of.
+     * @param world world to use the time of.
+     * @return the biomes temperature.
+     */
+    public double getBiome(Biome biome, World world) {
+        TimeTemperature mod = biomeModifiers.get(biome);
+        if (mod == null) return biomeDefault.getLocalTemp(world);
+        return mod.getLocalTemp(world);
+    }
+
+    /**
+     * @return the default temp for a biome.
+     */
+    public BiomeModifier getBiomeDefault() {
+        return biomeDefault;
+    }
+
+    /**
+     * @return the global falloff scalar for block emissions.
+     */
+    public double getScalar() {
+        return scalar;
+    }
+
+    /**
+     * @return the cave modifier. This scales between 0 and 1.
+     */
+    public double getCaveModifier() {
+        return caveModifier;
+    }
+
+    public double getDirectSunAmplifier() {
+        return directSunAmplifier;
+    }
+
+    /**
+     * @return how many steps the day cycle is split into.
+     */
+    public int getDayResolution() {
+        return dayResolution;
+    }
+
+    /**
+     * Returns how many items have been loaded for the given
+     * modifier type.
+     *
+     * @param type type to get size of.
+     * @return the number of settings loaded.
+     */
+    public int count(TempModifierType type) {
+        if (type == TempModifierType.BIOME)
+            return biomeModifiers.size();
+        if (type == TempModifierType.BLOCK)
+            return modifiers.get(type).size() + statePatterns.length;
+        return modifiers.get(type).size();
+    }
+}
@@ -26,6 +26,7 @@ import me.masstrix.eternalnature.util.WorldTime;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Biome;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.FileConfiguration;
@@ -35,12 +36,14 @@ import org.bukkit.scheduler.BukkitRunnable;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 public class Temperatures implements Reloadable {
 
     private static final String DEF_CONFIG = "temperature-config.yml";
     private static final Pattern NUM_CHECK = Pattern.compile("[0-9]*");
+    private static final AtomicInteger REVISIONS = new AtomicInteger();
     public static final String ICON_HOT = "☀";
     public static final String ICON_NORMAL = "✿";
     public static final String ICON_COLD = "❈";
@@ -51,25 +54,9 @@ public class Temperatures implements Reloadable {
     private final boolean DEFAULT;
     private File file;
     private FileConfiguration config;
-    private Map<TempModifierType, Map<Material, TemperatureModifier>> modifiers = new HashMap<>();
-    private Map<Biome, BiomeModifier> biomeModifiers = new HashMap<>();
-    private BiomeModifier biomeDefault;
-    private double minTemp = 0;
-    private double maxTemp = 1;
-    private double scalar;
-    private double caveModifier;
-    private double directSunAmplifier;
-
-    {
-        // Setup the modifier cache.
-        for (TempModifierType type : TempModifierType.values()) {
-            modifiers.put(type, new HashMap<>());
-        }
-
-        // Setup the config file.
-        this.config = new YamlConfiguration();
-        this.config.options().copyHeader(true);
-    }
+    private volatile TemperatureSnapshot snapshot = new TemperatureSnapshot();
+    private final TemperatureRange tempRange = new TemperatureRange(0, 1);
+    private final Object saveLock = new Object();
 
     public Temperatures(EternalNature plugin) {
         this.plugin = plugin;
@@ -137,90 +124,194 @@ public class Temperatures implements Reloadable {
     }
 
     /**
-     * Loads all config data into memory for this temperature set.
+     * Loads all config data into memory for this temperature set. The data is
+     * loaded off the main thread into a new snapshot which replaces the current
+     * one in a single swap once it's complete. Until then the current data is
+     * still used.
      */
     public void loadData() {
         if (file == null || !file.exists()) {
             return;
         }
 
-        try {
-            config.load(file);
-        } catch (IOException | InvalidConfigurationException e) {
-            e.printStackTrace();
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                YamlConfiguration loaded = new YamlConfiguration();
+                loaded.options().copyHeader(true);
+                try {
+                    loaded.load(file);
+                } catch (IOException | InvalidConfigurationException e) {
+                    e.printStackTrace();
+                    return;
+                }
+
+                double[] range = {Double.MAX_VALUE, -Double.MAX_VALUE};
+                publish(load(loaded, range));
+                if (range[0] <= range[1]) {
+                    updateMinMaxTempCache(range[0]);
+                    updateMinMaxTempCache(range[1]);
+                }
+
+                // Continue from the range that was reached last time.
+                if (loaded.contains("cache.min-temp"))
+                    updateMinMaxTempCache(loaded.getDouble("cache.min-temp"));
+                if (loaded.contains("cache.max-temp"))
+                    updateMinMaxTempCache(loaded.getDouble("cache.max-temp"));
+
+                // The config is only used on the main thread.
+                if (!plugin.isEnabled()) return;
+                new BukkitRunnable() {
+                    @Override
+                    public void run() {
+                        config = loaded;
+                    }
+                }.runTask(plugin);
+            }
+        }.runTaskAsynchronously(plugin);
+    }
+
+    /**
+     * Swaps in a newly loaded snapshot. If loads finish out of order the older
+     * data is ignored.
+     *
+     * @param loaded snapshot to publish.
+     */
+    private synchronized void publish(TemperatureSnapshot loaded) {
+        if (loaded.getRevision() > snapshot.getRevision()) {
+            snapshot = loaded;
         }
+    }
 
+    /**
+     * Loads all the temperature data from a config into a new snapshot.
+     *
+     * @param config config to load from.
+     * @param range  min and max temperature that was loaded. This is updated
+     *               with every loaded value.
+     * @return the loaded snapshot.
+     */
+    private TemperatureSnapshot load(FileConfiguration config, double[] range) {
         // General options
-        this.scalar = config.getDouble("options.global-scalar", 3);
-        this.caveModifier = config.getDouble("options.cave-modifier", 0.7);
-        this.directSunAmplifier = config.getDouble("options.direct-sun-amplifier", 1.3);
+        double scalar = config.getDouble("options.global-scalar", 3);
+        double caveModifier = config.getDouble("options.cave-modifier", 0.7);
+        double directSunAmplifier = config.getDouble("options.direct-sun-amplifier", 1.3);
+        int dayResolution = Math.max(1, Math.min(TimeTemperature.TIME_IN_DAY,
+                config.getInt("options.day-cycle-resolution", 240)));
 
         // Load default biome temperature
-        BiomeModifier defaultBiome = loadBiome(config.getConfigurationSection("options"),
-                "biome-default-temp", "default");
-        if (biomeDefault == null) {
-            this.biomeDefault = new BiomeModifier("default");
-            this.biomeDefault
-                    .put(WorldTime.MORNING, 10)
-                    .put(WorldTime.MID_DAY, 18)
-                    .put(WorldTime.DUSK, 15)
-                    .put(WorldTime.MID_NIGHT, 12);
-        } else {
-            this.biomeDefault = defaultBiome;
+        BiomeModifier biomeDefault = loadBiome(config.getConfigurationSection("options"),
+                "biome-default-temp", "default", dayResolution, range);
+
+        Map<Biome, BiomeModifier> biomes = new EnumMap<>(Biome.class);
+        Map<TempModifierType, Map<Material, TemperatureModifier>> modifiers = new EnumMap<>(TempModifierType.class);
+        Map<BlockData, TemperatureModifier> blockStates = new LinkedHashMap<>();
+
+        // Loads all the temperature data.
+        if (config.contains("data")) {
+            loadBiomes(config, biomes, dayResolution, range);
+            modifiers.put(TempModifierType.BLOCK, loadMtl(config, TempModifierType.BLOCK, scalar, range, blockStates));
+            modifiers.put(TempModifierType.CLOTHING, loadMtl(config, TempModifierType.CLOTHING, scalar, range, null));
         }
 
-        if (!config.contains("data")) return;
+        return new TemperatureSnapshot(REVISIONS.incrementAndGet(), modifiers, blockStates, biomes,
+                biomeDefault, scalar, caveModifier, directSunAmplifier, dayResolution);
+    }
 
-        // Loads all the temperature data into memory.
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                loadBiomes(config);
-                loadMtl(config, TempModifierType.BLOCK);
-                loadMtl(config, TempModifierType.CLOTHING);
-            }
-        }.runTaskAsynchronously(plugin);
+    /**
+     * Returns the revision of the loaded data. This changes every time the data
+     * has finished being loaded and is unique between all temperature sets so it
+     * can be used to check if anything that was built from this data is out of date.
+     *
+     * @return the revision of the loaded data.
+     */
+    public int getRevision() {
+        return snapshot.getRevision();
     }
 
     /**
-     * Loads a material based section of the config.
+     * Returns the currently loaded data. The snapshot will never change so it should
+     * be held onto for the whole of any calculation using it.
+     *
+     * @return the currently loaded data.
+     */
+    public TemperatureSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Loads a material based section of the config. Keys with a block state such
+     * as {@code furnace[lit=true]} are loaded into {@code states} if it's given
+     * and ignored otherwise.
      *
      * @param config config to load from.
      * @param type   type of modifier to load.
+     * @param scalar default falloff scalar.
+     * @param range  min and max temperature that was loaded.
+     * @param states map to put block state qualified modifiers in or null if
+     *               the type does not support them.
+     * @return the loaded modifiers.
      */
-    private void loadMtl(FileConfiguration config, TempModifierType type) {
+    private Map<Material, TemperatureModifier> loadMtl(FileConfiguration config, TempModifierType type,
+                                                       double scalar, double[] range,
+                                                       Map<BlockData, TemperatureModifier> states) {
+        Map<Material, TemperatureModifier> mods = new EnumMap<>(Material.class);
         ConfigurationSection sec = config.getConfigurationSection("data." + type.getConfigName());
-        if (sec == null) return;
+        if (sec == null) return mods;
 
         for (String key : sec.getKeys(false)) {
-            Material mtl = EnumUtils.findMatch(Material.values(), key);
+            int stateStart = key.indexOf('[');
+            Material mtl = EnumUtils.findMatch(Material.values(), stateStart == -1 ? key : key.substring(0, stateStart));
             if (mtl == null) continue;
 
-            double[] data = new double[] {0, this.scalar};
+            BlockData state = null;
+            if (stateStart != -1) {
+                if (states == null || !mtl.isBlock()) continue;
+                try {
+                    state = mtl.createBlockData(key.substring(stateStart).toLowerCase());
+                } catch (IllegalArgumentException e) {
+                    plugin.getLogger().warning("Invalid block state " + key + " in " + file.getName());
+                    continue;
+                }
+            }
+
+            double[] data = new double[] {0, scalar};
 
             // Load section
             if (sec.isConfigurationSection(key)) {
                 data[0] = sec.getDouble(key + ".emission", 0);
-                data[1] = sec.getDouble(key + ".falloff", this.scalar);
+                data[1] = sec.getDouble(key + ".falloff", scalar);
             }
             else {
                 data[0] = sec.getDouble(key, 0);
             }
 
+            // A block state without emission still overrides its material.
+            if (state != null) {
+                track(range, data[0]);
+                states.put(state, type.makeModifier(data));
+                continue;
+            }
+
             // Ignore blocks without emission
             if (data[0] == 0) continue;
 
-            updateMinMaxTempCache(data[0]);
-            modifiers.get(type).put(mtl, type.makeModifier(data));
+            track(range, data[0]);
+            mods.put(mtl, type.makeModifier(data));
         }
+        return mods;
     }
 
     /**
      * Loads biome temperature data from the config file.
      *
-     * @param config config to load the data from.
+     * @param config        config to load the data from.
+     * @param biomes        map to put the loaded biomes in.
+     * @param dayResolution how many steps to split the day into.
+     * @param range         min and max temperature that was loaded.
      */
-    private void loadBiomes(FileConfiguration config) {
+    private void loadBiomes(FileConfiguration config, Map<Biome, BiomeModifier> biomes,
+                            int dayResolution, double[] range) {
         ConfigurationSection sec = config.getConfigurationSection("data.biomes");
         if (sec == null) return;
 
@@ -228,12 +319,17 @@ public class Temperatures implements Reloadable {
             String match = findMatchingKey(biome.name(), sec.getKeys(false));
 
             if (match == null) continue;
-            BiomeModifier mod = loadBiome(sec, match, biome.name());
+            BiomeModifier mod = loadBiome(sec, match, biome.name(), dayResolution, range);
             if (mod == null) continue;
-            biomeModifiers.put(biome, mod);
+            biomes.put(biome, mod);
         }
     }
 
+    private static void track(double[] range, double value) {
+        if (value < range[0]) range[0] = value;
+        if (value > range[1]) range[1] = value;
+    }
+
     /**
      * @return if this is the default config.
      */
@@ -250,7 +346,7 @@ public class Temperatures implements Reloadable {
      *         if the material has no modifiers applied to it.
      */
     public TemperatureModifier getModifier(Material material, TempModifierType type) {
-        return this.modifiers.get(type).get(material);
+        return snapshot.getModifier(material, type);
     }
 
     /**
@@ -260,7 +356,7 @@ public class Temperatures implements Reloadable {
      * @return the biomes modifier or null if it has none.
      */
     public BiomeModifier getModifier(Biome biome) {
-        return this.biomeModifiers.getOrDefault(biome, biomeDefault);
+        return snapshot.getModifier(biome);
     }
 
     /**
@@ -271,32 +367,29 @@ public class Temperatures implements Reloadable {
      * @return the emission value of this material or 0 if it has none.
      */
     public double getEmission(Material material, TempModifierType type) {
-        TemperatureModifier mod = getModifier(material, type);
-        return mod == null ? 0 : mod.getEmission();
+        return snapshot.getEmission(material, type);
     }
 
     public double getBiome(Biome biome, World world) {
-        TimeTemperature mod = biomeModifiers.get(biome);
-        if (mod == null) return biomeDefault.getLocalTemp(world);
-        return mod.getLocalTemp(world);
+        return snapshot.getBiome(biome, world);
     }
 
     /**
      * @return the global falloff scalar for block emissions.
      */
     public double getScalar() {
-        return scalar;
+        return snapshot.getScalar();
     }
 
     /**
      * @return the cave modifier. This scales between 0 and 1.
      */
     public double getCaveModifier() {
-        return caveModifier;
+        return snapshot.getCaveModifier();
     }
 
     public double getDirectSunAmplifier() {
-        return directSunAmplifier;
+        return snapshot.getDirectSunAmplifier();
     }
 
     /**
@@ -304,18 +397,14 @@ public class Temperatures implements Reloadable {
      * is calculated live due to some factors not being completely known such as armor
      * when loading in the values. THe min and max values are used to determine things
      * such as the boss bars percentage.
+     * <p>
+     * This is safe to call from any thread. The cache is only written to the config
+     * when it is saved or flushed.
      *
      * @param temp temperature value to check for a cache update against.
      */
     public void updateMinMaxTempCache(double temp) {
-        if (maxTemp < temp) {
-            maxTemp = temp;
-            config.set("cache.max-temp", maxTemp);
-        }
-        else if (temp < minTemp) {
-            minTemp = temp;
-            config.set("cache.min-temp", minTemp);
-        }
+        tempRange.accept(temp);
     }
 
     /**
@@ -323,7 +412,7 @@ public class Temperatures implements Reloadable {
      *         change as systems are run.
      */
     public double getMaxTemp() {
-        return maxTemp;
+        return tempRange.getMax();
     }
 
     /**
@@ -331,14 +420,14 @@ public class Temperatures implements Reloadable {
      *         change as systems are run.
      */
     public double getMinTemp() {
-        return minTemp;
+        return tempRange.getMin();
     }
 
     /**
      * @return the default temp for a biome.
      */
     public BiomeModifier getBiomeDefault() {
-        return biomeDefault;
+        return snapshot.getBiomeDefault();
     }
 
     /**
@@ -359,13 +448,46 @@ public class Temperatures implements Reloadable {
      * Saves any changes made to the config file.
      */
     public void saveConfig() {
-        try {
-            config.save(file);
-        } catch (IOException e) {
-            e.printStackTrace();
+        // Nothing to save until the config has been loaded.
+        if (config == null) return;
+        tempRange.clearDirty();
+        writeRange();
+        synchronized (saveLock) {
+            try {
+                config.save(file);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
     }
 
+    /**
+     * Writes the min and max temperature cache to the config file if it has
+     * changed since it was last written. The file is written off the main thread.
+     */
+    public void flush() {
+        if (config == null || !tempRange.clearDirty()) return;
+        writeRange();
+        String data = config.saveToString();
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                synchronized (saveLock) {
+                    try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                        writer.write(data);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }.runTaskAsynchronously(plugin);
+    }
+
+    private void writeRange() {
+        config.set("cache.min-temp", tempRange.getMin());
+        config.set("cache.max-temp", tempRange.getMax());
+    }
+
     /**
      * Returns how many items have been loaded for the given
      * modifier type.
@@ -374,9 +496,7 @@ public class Temperatures implements Reloadable {
      * @return the number of settings loaded.
      */
     public int count(TempModifierType type) {
-        if (type == TempModifierType.BIOME)
-            return biomeModifiers.size();
-        return modifiers.get(type).size();
+        return snapshot.count(type);
     }
 
     /**
@@ -384,10 +504,13 @@ public class Temperatures implements Reloadable {
      *
      * @param sec  section the data is stored in.
      * @param key  key to get the temperature from in sec.
-     * @param name name of biome.
+     * @param name          name of biome.
+     * @param dayResolution how many steps to split the day into.
+     * @param range         min and max temperature that was loaded.
      * @return a biome modifier or null if there was an error getting the data.
      */
-    private BiomeModifier loadBiome(ConfigurationSection sec, String key, String name) {
+    private BiomeModifier loadBiome(ConfigurationSection sec, String key, String name,
+                                    int dayResolution, double[] range) {
         if (sec == null) return null;
         BiomeModifier mod = new BiomeModifier(name);
         // Load data into modifier
@@ -403,13 +526,14 @@ public class Temperatures implements Reloadable {
                     timeExact = wt == null ? -1 : wt.getTime();
                 }
                 double emission = biomeSet.getDouble(time, 0);
-                updateMinMaxTempCache(emission);
+                track(range, emission);
                 mod.put(timeExact, emission);
             }
         } else {
             mod.put(WorldTime.MID_DAY, sec.getDouble(key));
         }
 
+        mod.compile(dayResolution);
         return mod;
     }
 
@@ -29,6 +29,7 @@ public class TimeTemperature implements TemperatureModifier {
 
     private final Map<Integer, Double> TIMES = new HashMap<>();
     private double fallback = 0;
+    private float[] table;
 
     /**
      * Puts a new value in for the time modifier. If the provided
@@ -42,6 +43,7 @@ public class TimeTemperature implements TemperatureModifier {
     public TimeTemperature put(WorldTime time, double temp) {
         TIMES.put(time.getTime(), temp);
         fallback = temp;
+        table = null;
         return this;
     }
 
@@ -58,6 +60,7 @@ public class TimeTemperature implements TemperatureModifier {
         if (time <= TIME_IN_DAY && time >= 0) {
             TIMES.put(time, temp);
             fallback = temp;
+            table = null;
         }
         return this;
     }
@@ -74,6 +77,28 @@ public class TimeTemperature implements TemperatureModifier {
         return TIMES;
     }
 
+    /**
+     * Compiles the stored times into a lookup table covering a whole day.
+     * Once compiled the local temperature is read straight from the table
+     * instead of being interpolated on each call. Adding a new time will
+     * discard the table until it is compiled again.
+     *
+     * @param resolution how many steps to split the day into. This is
+     *                   clamped between 1 and {@link #TIME_IN_DAY}.
+     */
+    public void compile(int resolution) {
+        if (TIMES.size() <= 1) {
+            table = null;
+            return;
+        }
+        resolution = Math.max(1, Math.min(resolution, TIME_IN_DAY));
+        float[] table = new float[resolution];
+        for (int i = 0; i < resolution; i++) {
+            table[i] = (float) getEmission((int) ((long) i * TIME_IN_DAY / resolution));
+        }
+        this.table = table;
+    }
+
     /**
      * Gets the worlds temperature based on the modifiers applied
      * for this time modifier.
@@ -83,7 +108,23 @@ public class TimeTemperature implements TemperatureModifier {
      */
     public double getLocalTemp(World world) {
         if (TIMES.size() <= 1 || world == null) return fallback;
-        return getEmission((int) world.getTime());
+        return getLocalTemp((int) (world.getTime() % TIME_IN_DAY));
+    }
+
+    /**
+     * Gets the temperature at a time of day. This is read from the lookup
+     * table if it has been compiled, otherwise it is interpolated.
+     *
+     * @param time time of day between 0 and {@link #TIME_IN_DAY}.
+     * @return the emission value for that time.
+     */
+    double getLocalTemp(int time) {
+        if (TIMES.size() <= 1) return fallback;
+        float[] table = this.table;
+        if (table != null) {
+            return table[(int) ((long) time * table.length / TIME_IN_DAY)];
+        }
+        return getEmission(time);
     }
 
     /**
@@ -94,7 +135,7 @@ public class TimeTemperature implements TemperatureModifier {
      * @param time time to get the emission value for.
      * @return the emission value for that time.
      */
-    private double getEmission(int time) {
+    double getEmission(int time) {
         int from = -1, to = -1;
         int smallest = Integer.MAX_VALUE;
         int largest = Integer.MIN_VALUE;
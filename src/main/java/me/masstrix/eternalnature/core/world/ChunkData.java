@@ -19,12 +19,20 @@ package me.masstrix.eternalnature.core.world;
 import me.masstrix.eternalnature.api.EternalChunk;
 import me.masstrix.eternalnature.config.ConfigOption;
 import me.masstrix.eternalnature.config.SystemConfig;
+import me.masstrix.eternalnature.core.temperature.TemperatureSnapshot;
+import me.masstrix.eternalnature.util.Position;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Material;
 import org.bukkit.World;
+import org.bukkit.block.Biome;
 import org.bukkit.block.Block;
 import org.bukkit.block.data.Levelled;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 public class ChunkData implements EternalChunk {
@@ -32,8 +40,32 @@ public class ChunkData implements EternalChunk {
     private static final int VERSION = 2;
     private static final int sections = 16;
     private static final int sectionVolume = 4096;
+    private static final int climateGrid = 4;
+    static final int unknownHeight = Integer.MIN_VALUE;
+    private static final int relightDelay = 100;
 
     private Set<WaterfallEmitter> waterfallEmitters = new HashSet<>();
+    private volatile ChunkSection[] sectionData = new ChunkSection[sections];
+    private List<Position> changedWhileIndexing = new ArrayList<>();
+    private boolean indexing;
+    private int indexRevision = -1;
+    private Biome[] biomes;
+    private int[] heights;
+    private BukkitTask relightTask;
+    // One bit for each section that changed since it was last classified.
+    private int relightSections;
+    private boolean changed;
+    private long indexedAt;
+    private final float[] climate = new float[climateGrid * climateGrid];
+    private int climateBucket = -1;
+    private int climateRevision = -1;
+    // Water run of each column that was last looked up. A column with an
+    // equal bottom and top has no cached run. The top is only the surface
+    // of the water if the surface flag is set, otherwise the probe stopped
+    // at the depth cap.
+    private final short[] waterBottom = new short[ChunkSection.SIZE * ChunkSection.SIZE];
+    private final short[] waterTop = new short[ChunkSection.SIZE * ChunkSection.SIZE];
+    private final boolean[] waterSurface = new boolean[ChunkSection.SIZE * ChunkSection.SIZE];
     private WorldData worldData;
     private SystemConfig config;
     private final int x;
@@ -116,6 +148,582 @@ public class ChunkData implements EternalChunk {
 
     }
 
+    /**
+     * Loads the temperature index for this chunk. If the chunk is in the region
+     * cache with the same temperature data and inhabited time it is read from
+     * there off the main thread, otherwise the chunk is indexed from its blocks.
+     * The inhabited time only goes up while players are near the chunk, so if it
+     * changed the chunk was played in without the cache being updated.
+     */
+    void index() {
+        RegionCache cache = worldData.getRegionCache();
+        if (cache == null) {
+            build();
+            return;
+        }
+        if (indexing) return;
+        World world = worldData.asBukkit();
+        if (world == null || !world.isChunkLoaded(x, z)) return;
+        indexing = true;
+
+        TemperatureSnapshot temps = worldData.getTemperatures().getSnapshot();
+        int revision = temps.getRevision();
+        int stamp = RegionCache.stamp(temps.getDataHash());
+        long inhabited = world.getChunkAt(x, z).getInhabitedTime();
+
+        cache.read(x, z, stamp, inhabited, buf -> {
+            if (!worldData.plugin.isEnabled()) return;
+            int[] columns = new int[ChunkSection.SIZE * ChunkSection.SIZE];
+            Biome[] sampled = new Biome[climateGrid * climateGrid];
+            ChunkSection[] built = new ChunkSection[sections];
+            boolean valid = buf != null;
+            if (valid) {
+                try {
+                    for (int i = 0; i < columns.length; i++) {
+                        short height = buf.getShort();
+                        columns[i] = height == Short.MIN_VALUE ? unknownHeight : height;
+                    }
+                    Biome[] biomeValues = Biome.values();
+                    for (int i = 0; i < sampled.length; i++) {
+                        sampled[i] = biomeValues[buf.getShort()];
+                    }
+                    for (int i = 0; i < sections; i++) {
+                        built[i] = new ChunkSection();
+                        built[i].read(buf, temps);
+                    }
+                } catch (RuntimeException e) {
+                    // A slot that can't be read is indexed from the blocks instead.
+                    valid = false;
+                }
+            }
+
+            boolean loaded = valid;
+            new BukkitRunnable() {
+                @Override
+                public void run() {
+                    if (loaded) {
+                        publishIndex(built, sampled, columns, revision);
+                    } else {
+                        indexing = false;
+                        build();
+                    }
+                }
+            }.runTask(worldData.plugin);
+        });
+    }
+
+    /**
+     * Rebuilds the temperature index for this chunk. The chunk is snapshot on the
+     * main thread and then scanned asynchronously for any blocks that emit a
+     * temperature. Once done the new sections replace the old ones on the main
+     * thread and are written to the region cache.
+     */
+    private void build() {
+        if (indexing) return;
+        World world = worldData.asBukkit();
+        if (world == null || !world.isChunkLoaded(x, z)) return;
+        indexing = true;
+
+        TemperatureSnapshot temps = worldData.getTemperatures().getSnapshot();
+        int revision = temps.getRevision();
+        RegionCache cache = worldData.getRegionCache();
+        Chunk chunk = world.getChunkAt(x, z);
+        ChunkSnapshot snapshot = chunk.getChunkSnapshot(true, true, false);
+        long inhabited = chunk.getInhabitedTime();
+
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                int[] columns = new int[sectionVolume / ChunkSection.SIZE];
+                ChunkSection[] built = new ChunkSection[sections];
+                Biome[] sampled = new Biome[climateGrid * climateGrid];
+                try {
+                    // First free y of each column.
+                    for (int cz = 0; cz < ChunkSection.SIZE; cz++) {
+                        for (int cx = 0; cx < ChunkSection.SIZE; cx++) {
+                            columns[cz << 4 | cx] = snapshot.getHighestBlockYAt(cx, cz);
+                        }
+                    }
+
+                    for (int i = 0; i < sections; i++) {
+                        built[i] = new ChunkSection();
+                        if (!snapshot.isSectionEmpty(i)) {
+                            built[i].index(snapshot, i, temps);
+                        }
+                        built[i].classify(snapshot, i, columns);
+                    }
+
+                    // Sample the surface biome in the middle of each 4x4 column.
+                    for (int gz = 0; gz < climateGrid; gz++) {
+                        for (int gx = 0; gx < climateGrid; gx++) {
+                            int bx = (gx << 2) + 2;
+                            int bz = (gz << 2) + 2;
+                            int by = snapshot.getHighestBlockYAt(bx, bz);
+                            sampled[gz * climateGrid + gx] = snapshot.getBiome(bx, by, bz);
+                        }
+                    }
+
+                    if (cache != null) {
+                        byte[] data = encode(built, sampled, columns);
+                        if (data != null) cache.write(x, z, RegionCache.stamp(temps.getDataHash()), inhabited, data);
+                        else cache.invalidate(x, z);
+                    }
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    abortIndex();
+                    return;
+                }
+
+                if (!worldData.plugin.isEnabled()) return;
+                new BukkitRunnable() {
+                    @Override
+                    public void run() {
+                        changed = false;
+                        publishIndex(built, sampled, columns, revision);
+                    }
+                }.runTask(worldData.plugin);
+            }
+        }.runTaskAsynchronously(worldData.plugin);
+    }
+
+    /**
+     * Stops indexing after the index could not be built so the chunk can be
+     * indexed again later. The old index is kept until then.
+     */
+    private void abortIndex() {
+        if (!worldData.plugin.isEnabled()) return;
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                indexing = false;
+            }
+        }.runTask(worldData.plugin);
+    }
+
+    /**
+     * Swaps in a freshly built index. Any blocks that were changed while the
+     * chunk was being indexed are updated again so no changes are lost.
+     *
+     * @param built    newly indexed sections.
+     * @param biomes   biome grid of the chunk.
+     * @param heights  first free y of each column in the chunk.
+     * @param revision revision of the temperature data the sections were built with.
+     */
+    private void publishIndex(ChunkSection[] built, Biome[] biomes, int[] heights, int revision) {
+        this.sectionData = built;
+        this.biomes = biomes;
+        this.heights = heights;
+        this.climateBucket = -1;
+        this.indexRevision = revision;
+        this.indexing = false;
+        this.indexedAt = System.currentTimeMillis();
+
+        if (changedWhileIndexing.isEmpty()) return;
+        World world = worldData.asBukkit();
+        if (world != null) {
+            TemperatureSnapshot temps = worldData.getTemperatures().getSnapshot();
+            for (Position pos : changedWhileIndexing) {
+                Block block = world.getBlockAt((x << 4) + pos.getX(), pos.getY(), (z << 4) + pos.getZ());
+                updateBlock(pos.getX(), pos.getY(), pos.getZ(), block.getType(), temps.getStateId(block),
+                        ChunkSection.isOpen(block.getBlockData()));
+            }
+        }
+        changedWhileIndexing.clear();
+    }
+
+    /**
+     * Writes the chunks index to the region cache if it has changed since it was
+     * last written, otherwise only its inhabited time is updated. This is called
+     * when the chunk is unloaded.
+     *
+     * @param inhabited current inhabited time of the chunk.
+     */
+    void save(long inhabited) {
+        if (relightTask != null) relightTask.cancel();
+        relightTask = null;
+        relightSections = 0;
+
+        RegionCache cache = worldData.getRegionCache();
+        if (cache == null || indexing || biomes == null
+                || indexRevision != worldData.getTemperatures().getRevision()) return;
+        TemperatureSnapshot temps = worldData.getTemperatures().getSnapshot();
+        int stamp = RegionCache.stamp(temps.getDataHash());
+
+        // The slot already holds this index so only the inhabited time is updated.
+        if (!changed) {
+            cache.touch(x, z, stamp, inhabited);
+            return;
+        }
+        byte[] data = encode(sectionData, biomes, heights);
+        if (data == null) return;
+        cache.write(x, z, stamp, inhabited, data);
+        changed = false;
+    }
+
+    /**
+     * Encodes an index into a region cache slot.
+     *
+     * @param sections sections of the chunk.
+     * @param biomes   biome grid of the chunk.
+     * @param heights  first free y of each column.
+     * @return the slot data or null if the chunk has too many emitters to
+     *         be cached.
+     */
+    private static byte[] encode(ChunkSection[] sections, Biome[] biomes, int[] heights) {
+        byte[] data = new byte[RegionCache.SLOT];
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        buf.position(RegionCache.SLOT_HEADER);
+        for (int height : heights) {
+            buf.putShort(height == unknownHeight ? Short.MIN_VALUE : (short) height);
+        }
+        for (Biome biome : biomes) {
+            buf.putShort((short) biome.ordinal());
+        }
+        for (ChunkSection section : sections) {
+            if (section == null || !section.write(buf)) return null;
+        }
+        return data;
+    }
+
+    /**
+     * Returns if the temperature index is built and up to date with the worlds
+     * temperature data. If the index is out of date it will start being rebuilt.
+     *
+     * @return if the index can be used.
+     */
+    public boolean isIndexed() {
+        if (indexRevision == worldData.getTemperatures().getRevision()) return true;
+        index();
+        return false;
+    }
+
+    /**
+     * Updates a block in the temperature index.
+     *
+     * @param x    local x position in the chunk.
+     * @param y    y position of the block.
+     * @param z    local z position in the chunk.
+     * @param type  new type of the block.
+     * @param state state id of the new block.
+     * @param open  if the new block is an open door, trapdoor or fence gate.
+     */
+    void updateBlock(int x, int y, int z, Material type, int state, boolean open) {
+        if (y < 0 || y >= sections * ChunkSection.SIZE) return;
+        int col = z << 4 | x;
+        waterBottom[col] = 0;
+        waterTop[col] = 0;
+        waterSurface[col] = false;
+        if (!changed) {
+            changed = true;
+            RegionCache cache = worldData.getRegionCache();
+            if (cache != null) cache.invalidate(this.x, this.z);
+        }
+        if (indexing) {
+            changedWhileIndexing.add(new Position(x, y, z));
+            return;
+        }
+        ChunkSection section = sectionData[y >> 4];
+        if (section == null) return;
+        TemperatureSnapshot temps = worldData.getTemperatures().getSnapshot();
+
+        // Sections may be in use by a scan so the change is made to a copy.
+        ChunkSection updated = section.copy();
+        updated.setBlock(x, y & 0xF, z, type, state,
+                temps.getBlockEmission(state), temps.getBlockFalloff(state), open);
+        ChunkSection[] data = sectionData.clone();
+        data[y >> 4] = updated;
+        sectionData = data;
+
+        // Update the height of the column if the top block changed.
+        if (heights != null) {
+            heights[col] = updateHeight(heights[col], y, type);
+        }
+        relightSections |= 1 << (y >> 4);
+        scheduleRelight();
+    }
+
+    /**
+     * Returns the height of a column after a block in it changed. A column with
+     * an unknown height is left unknown so it is looked up again the next time
+     * it is needed, a block below it can't tell where the top of the column is.
+     *
+     * @param height current height of the column, one above its highest block.
+     * @param y      y position of the block that changed.
+     * @param type   new type of the block.
+     * @return the new height of the column.
+     */
+    static int updateHeight(int height, int y, Material type) {
+        if (height == unknownHeight) return height;
+        if (blocksHeight(type)) {
+            return y >= height ? y + 1 : height;
+        }
+        return y == height - 1 ? unknownHeight : height;
+    }
+
+    /**
+     * Returns if a block counts towards the height of its column. This matches
+     * the blocks {@link World#getHighestBlockYAt(int, int)} counts, blocks that
+     * stop movement or hold water, so torches, flowers and the like are skipped.
+     *
+     * @param type type of the block.
+     * @return if the block counts towards the height of its column.
+     */
+    static boolean blocksHeight(Material type) {
+        switch (type) {
+            case WATER:
+            case LAVA:
+            case KELP:
+            case KELP_PLANT:
+            case SEAGRASS:
+            case TALL_SEAGRASS:
+            case BUBBLE_COLUMN:
+                return true;
+            default:
+                return type.isSolid();
+        }
+    }
+
+    /**
+     * Classifies the light of changed sections again a short time after blocks
+     * have stopped changing in the chunk. Lighting is updated after a block
+     * changes so the classification can only be done again once it has settled.
+     */
+    private void scheduleRelight() {
+        if (relightTask != null || !worldData.plugin.isEnabled()) return;
+        relightTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                relightTask = null;
+                relight();
+            }
+        }.runTaskLater(worldData.plugin, relightDelay);
+    }
+
+    /**
+     * Classifies the light of only the sections that changed. The chunk is
+     * snapshot on the main thread and the sections are classified asynchronously.
+     * The emitters of the sections are already up to date so they are kept.
+     */
+    private void relight() {
+        int dirty = relightSections;
+        relightSections = 0;
+        World world = worldData.asBukkit();
+        // An index that is being built classifies every section anyway.
+        if (dirty == 0 || indexing || world == null || !world.isChunkLoaded(x, z)) return;
+        ChunkSnapshot snapshot = world.getChunkAt(x, z).getChunkSnapshot(true, false, false);
+
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                int[] columns = new int[sectionVolume / ChunkSection.SIZE];
+                ChunkSection[] lit = new ChunkSection[sections];
+                try {
+                    for (int cz = 0; cz < ChunkSection.SIZE; cz++) {
+                        for (int cx = 0; cx < ChunkSection.SIZE; cx++) {
+                            columns[cz << 4 | cx] = snapshot.getHighestBlockYAt(cx, cz);
+                        }
+                    }
+                    for (int i = 0; i < sections; i++) {
+                        if ((dirty & (1 << i)) == 0) continue;
+                        lit[i] = new ChunkSection();
+                        lit[i].classify(snapshot, i, columns);
+                    }
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    return;
+                }
+
+                if (!worldData.plugin.isEnabled()) return;
+                new BukkitRunnable() {
+                    @Override
+                    public void run() {
+                        publishLight(lit);
+                    }
+                }.runTask(worldData.plugin);
+            }
+        }.runTaskAsynchronously(worldData.plugin);
+    }
+
+    /**
+     * Swaps in sections with their light classified again. Blocks that changed
+     * since the snapshot will have scheduled another relight.
+     *
+     * @param lit sections holding the new classification or null for sections
+     *            that were not classified.
+     */
+    private void publishLight(ChunkSection[] lit) {
+        if (indexing) return;
+        ChunkSection[] data = sectionData.clone();
+        for (int i = 0; i < sections; i++) {
+            if (lit[i] == null || data[i] == null) continue;
+            ChunkSection updated = data[i].copy();
+            updated.copyLight(lit[i]);
+            data[i] = updated;
+        }
+        sectionData = data;
+    }
+
+    /**
+     * Returns if a block can see the sky based on the height of its column.
+     *
+     * @param world world this chunk is in.
+     * @param x     local x position in the chunk.
+     * @param y     y position of the block.
+     * @param z     local z position in the chunk.
+     * @return if the block is above every other block in its column.
+     */
+    boolean isExposed(World world, int x, int y, int z) {
+        int[] heights = this.heights;
+        if (heights == null) {
+            return y > world.getHighestBlockYAt((this.x << 4) + x, (this.z << 4) + z);
+        }
+        int col = z << 4 | x;
+        if (heights[col] == unknownHeight) {
+            heights[col] = world.getHighestBlockYAt((this.x << 4) + x, (this.z << 4) + z) + 1;
+        }
+        return y >= heights[col];
+    }
+
+    /**
+     * Returns how many water blocks are directly above a block in this chunk, up
+     * to {@link WorldData#maxWaterDepth}. The water in the column is cached until
+     * a block in the column changes so players swimming in the same water don't
+     * have to look for the surface each time. Swimming down joins the cached run
+     * from below and swimming up only probes past where the last probe stopped.
+     *
+     * @param block block to get the depth of. This should be water.
+     * @return how many water blocks are above the block.
+     */
+    int getWaterDepth(Block block) {
+        int col = (block.getZ() & 0xF) << 4 | (block.getX() & 0xF);
+        int y = block.getY();
+        int limit = Math.min(y + 1 + WorldData.maxWaterDepth, sections * ChunkSection.SIZE);
+        int cachedBottom = waterBottom[col];
+        int cachedTop = waterTop[col];
+        boolean cached = cachedTop > cachedBottom;
+
+        int bottom = y, top = y + 1;
+        boolean surface = false;
+        if (y >= cachedBottom && y < cachedTop) {
+            bottom = cachedBottom;
+            top = cachedTop;
+            surface = waterSurface[col];
+        }
+
+        // Find the surface of the water or stop at the cap.
+        World world = block.getWorld();
+        while (!surface && top < limit) {
+            if (cached && top == cachedBottom && bottom < cachedBottom) {
+                top = cachedTop;
+                surface = waterSurface[col];
+            } else if (WorldData.isWater(world.getBlockAt(block.getX(), top, block.getZ()))) {
+                top++;
+            } else {
+                surface = true;
+            }
+        }
+        if (top >= sections * ChunkSection.SIZE) surface = true;
+
+        waterBottom[col] = (short) bottom;
+        waterTop[col] = (short) top;
+        waterSurface[col] = surface;
+        return Math.min(top, limit) - y - 1;
+    }
+
+    /**
+     * Returns the biome temperature at a position in this chunk. The chunk keeps
+     * a 4x4 grid of biome temperatures which is only recalculated once the day
+     * cycle moves into a new step or the temperature data is reloaded.
+     *
+     * @param x      local x position in the chunk.
+     * @param z      local z position in the chunk.
+     * @param world  world this chunk is in.
+     * @param temps  temperature data to get biome temperatures from.
+     * @param bucket current step of the day cycle.
+     * @return the biome temperature or NaN if the chunk has not been indexed yet.
+     */
+    double getClimate(int x, int z, World world, TemperatureSnapshot temps, int bucket) {
+        if (biomes == null) return Double.NaN;
+        updateClimate(world, temps, bucket);
+        return climate[(z >> 2) * climateGrid + (x >> 2)];
+    }
+
+    private void updateClimate(World world, TemperatureSnapshot temps, int bucket) {
+        int revision = temps.getRevision();
+        if (bucket != climateBucket || revision != climateRevision) {
+            for (int i = 0; i < climate.length; i++) {
+                climate[i] = (float) temps.getBiome(biomes[i], world);
+            }
+            climateBucket = bucket;
+            climateRevision = revision;
+        }
+    }
+
+    /**
+     * Gets the chunk ready for temperature lookups before a player reaches it. If
+     * the index is out of date it's started again, otherwise the biome grid is
+     * worked out for the current step of the day cycle.
+     *
+     * @param world  world this chunk is in.
+     * @param temps  temperature data to get biome temperatures from.
+     * @param bucket current step of the day cycle.
+     */
+    void prepare(World world, TemperatureSnapshot temps, int bucket) {
+        if (indexing) return;
+        if (indexRevision != temps.getRevision()) {
+            index();
+        } else if (biomes != null) {
+            updateClimate(world, temps, bucket);
+        }
+    }
+
+    /**
+     * Indexes the chunk again from its blocks if its index is older than a set
+     * time. This picks up any changes that no event was fired for.
+     *
+     * @param now      current time in milliseconds.
+     * @param interval how long an index is kept for in milliseconds.
+     * @return if the chunk started being indexed.
+     */
+    boolean refresh(long now, long interval) {
+        if (indexing || indexRevision < 0 || now - indexedAt < interval) return false;
+        build();
+        return indexing;
+    }
+
+    /**
+     * @return if the chunk is being indexed.
+     */
+    boolean isIndexing() {
+        return indexing;
+    }
+
+    /**
+     * @return the first free y of each column indexed by {@code z << 4 | x} or
+     *         null if the chunk has not been indexed yet. A column may be
+     *         {@link Integer#MIN_VALUE} if its height is not known.
+     */
+    int[] getHeights() {
+        return heights;
+    }
+
+    /**
+     * @return every section in the chunk. The array is replaced whenever a section
+     *         changes so it must not be changed.
+     */
+    ChunkSection[] getSections() {
+        return sectionData;
+    }
+
+    /**
+     * @param index index of the section from 0 to 15.
+     * @return the section or null if the chunk has not been indexed yet.
+     */
+    public ChunkSection getSectionData(int index) {
+        if (index < 0 || index >= sections) return null;
+        return sectionData[index];
+    }
+
     @Override
     public int getX() {
         return x;
@@ -0,0 +1,526 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.world;
+
+import me.masstrix.eternalnature.core.temperature.TempModifierType;
+import me.masstrix.eternalnature.core.temperature.TemperatureSnapshot;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Openable;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A 16x16x16 section of a chunk. Each section keeps an index of only the
+ * blocks inside of it that emit a temperature so scanners can loop over
+ * a few emitters instead of every block around a player.
+ * <p>
+ * Once a section has been published by its chunk it is never changed, block
+ * updates are applied to a copy which then replaces it. This lets scans read
+ * sections off the main thread.
+ */
+public class ChunkSection {
+
+    public static final int SIZE = 16;
+    public static final int VOLUME = 4096;
+    static final int MAX_CACHED_EMITTERS = 64;
+    static final int MAX_CACHED_OPENINGS = 16;
+    static final int CACHED_SIZE = 8 + VOLUME / 8 + EmissionCells.CELLS + 8
+            + MAX_CACHED_EMITTERS * 4 + MAX_CACHED_OPENINGS * 2;
+    private static final boolean[] SOLID;
+    private static final boolean[] OPENABLE;
+
+    static {
+        Material[] materials = Material.values();
+        SOLID = new boolean[materials.length];
+        OPENABLE = new boolean[materials.length];
+        for (Material material : materials) {
+            SOLID[material.ordinal()] = material.isSolid();
+            String name = material.name();
+            OPENABLE[material.ordinal()] = name.endsWith("_DOOR")
+                    || name.endsWith("_TRAPDOOR") || name.endsWith("_FENCE_GATE");
+        }
+    }
+
+    // One bit per block, set if the block can be passed through.
+    private final long[] passable = new long[VOLUME / 64];
+    // Sorted positions of open doors, trapdoors and fence gates. These are solid
+    // but heat can move through them.
+    private short[] openings = new short[0];
+    private short[] positions = new short[0];
+    private Material[] types = new Material[0];
+    private short[] states = new short[0];
+    private double[] emissions = new double[0];
+    private double[] falloffs = new double[0];
+    private int emitters;
+
+    // Average light of the blocks in each 4x4x4 cell of this section that are
+    // covered from the sky, stored as sky light << 4 | block light. Cells with
+    // no covered blocks use the average of the whole section.
+    private final byte[] coveredLight = new byte[EmissionCells.CELLS];
+    // One bit per cell, set if its covered blocks contain cave air.
+    private long caveCells;
+    private boolean classified;
+    private volatile EmissionCells cells;
+
+    {
+        Arrays.fill(passable, -1L);
+    }
+
+    /**
+     * Indexes all the emissive blocks in this section from a snapshot of
+     * the chunk. This is safe to run off the main thread.
+     *
+     * @param snapshot snapshot of the chunk this section is in.
+     * @param section  index of the section in the chunk.
+     * @param temps    temperature data to get emission values from.
+     */
+    void index(ChunkSnapshot snapshot, int section, TemperatureSnapshot temps) {
+        int minY = section * SIZE;
+        for (int y = 0; y < SIZE; y++) {
+            for (int z = 0; z < SIZE; z++) {
+                for (int x = 0; x < SIZE; x++) {
+                    Material type = snapshot.getBlockType(x, minY + y, z);
+                    if (SOLID[type.ordinal()]) {
+                        setPassable(pack(x, y, z), false);
+                        if (OPENABLE[type.ordinal()] && isOpen(snapshot.getBlockData(x, minY + y, z))) {
+                            setOpening(pack(x, y, z), true);
+                        }
+                    }
+
+                    // Block data is only read for materials with block state entries.
+                    int state;
+                    if (temps.hasStates(type)) {
+                        state = temps.getStateId(snapshot.getBlockData(x, minY + y, z));
+                    } else if (temps.hasModifier(type, TempModifierType.BLOCK)) {
+                        state = temps.getStateId(type);
+                    } else {
+                        continue;
+                    }
+                    double emission = temps.getBlockEmission(state);
+                    if (emission == 0) continue;
+                    add(pack(x, y, z), type, state, emission, temps.getBlockFalloff(state));
+                }
+            }
+        }
+    }
+
+    /**
+     * Classifies the blocks in this section that are covered from the sky. This
+     * records their average sky and block light and if they are part of a cave
+     * for each 4x4x4 cell, so a lit room and a cave below it in the same section
+     * are told apart. This is safe to run off the main thread.
+     *
+     * @param snapshot snapshot of the chunk this section is in.
+     * @param section  index of the section in the chunk.
+     * @param heights  first free y of each column in the chunk indexed by
+     *                 {@code z << 4 | x}.
+     */
+    void classify(ChunkSnapshot snapshot, int section, int[] heights) {
+        int minY = section * SIZE;
+        int[] skyTotal = new int[EmissionCells.CELLS];
+        int[] blockTotal = new int[EmissionCells.CELLS];
+        int[] count = new int[EmissionCells.CELLS];
+        long caveAir = 0;
+
+        for (int z = 0; z < SIZE; z++) {
+            for (int x = 0; x < SIZE; x++) {
+                int top = Math.min(heights[z << 4 | x] - minY, SIZE);
+                for (int y = 0; y < top; y++) {
+                    Material type = snapshot.getBlockType(x, minY + y, z);
+                    if (SOLID[type.ordinal()]) continue;
+                    int cell = cellOf(x, y, z);
+                    if (type == Material.CAVE_AIR) caveAir |= 1L << cell;
+                    skyTotal[cell] += snapshot.getBlockSkyLight(x, minY + y, z);
+                    blockTotal[cell] += snapshot.getBlockEmittedLight(x, minY + y, z);
+                    count[cell]++;
+                }
+            }
+        }
+
+        int sectionSky = 0, sectionBlock = 0, sectionCount = 0;
+        for (int c = 0; c < EmissionCells.CELLS; c++) {
+            sectionSky += skyTotal[c];
+            sectionBlock += blockTotal[c];
+            sectionCount += count[c];
+        }
+        byte average = sectionCount == 0 ? 0 : packLight(
+                Math.round((float) sectionSky / sectionCount),
+                Math.round((float) sectionBlock / sectionCount));
+        for (int c = 0; c < EmissionCells.CELLS; c++) {
+            coveredLight[c] = count[c] == 0 ? average : packLight(
+                    Math.round((float) skyTotal[c] / count[c]),
+                    Math.round((float) blockTotal[c] / count[c]));
+        }
+        caveCells = caveAir;
+        classified = true;
+    }
+
+    /**
+     * Copies the classification of another section into this one.
+     *
+     * @param other section to copy the light from.
+     */
+    void copyLight(ChunkSection other) {
+        System.arraycopy(other.coveredLight, 0, coveredLight, 0, coveredLight.length);
+        caveCells = other.caveCells;
+        classified = other.classified;
+    }
+
+    /**
+     * @return if the light of this section has been classified.
+     */
+    public boolean isClassified() {
+        return classified;
+    }
+
+    /**
+     * @param x local x position in the section.
+     * @param y local y position in the section.
+     * @param z local z position in the section.
+     * @return the average sky light of blocks covered from the sky in the
+     *         cell the position is in.
+     */
+    public int getCoveredSkyLight(int x, int y, int z) {
+        return (coveredLight[cellOf(x, y, z)] >> 4) & 0xF;
+    }
+
+    /**
+     * @param x local x position in the section.
+     * @param y local y position in the section.
+     * @param z local z position in the section.
+     * @return the average block light of blocks covered from the sky in the
+     *         cell the position is in.
+     */
+    public int getCoveredBlockLight(int x, int y, int z) {
+        return coveredLight[cellOf(x, y, z)] & 0xF;
+    }
+
+    /**
+     * @param x local x position in the section.
+     * @param y local y position in the section.
+     * @param z local z position in the section.
+     * @return if the covered blocks in the cell the position is in contain
+     *         cave air.
+     */
+    public boolean isCave(int x, int y, int z) {
+        return (caveCells & (1L << cellOf(x, y, z))) != 0;
+    }
+
+    private static int cellOf(int x, int y, int z) {
+        int size = EmissionCells.CELL_SIZE;
+        return EmissionCells.cellIndex(x / size, y / size, z / size);
+    }
+
+    private static byte packLight(int sky, int block) {
+        return (byte) (sky << 4 | block);
+    }
+
+    /**
+     * Updates a block in the section. If the new type emits a temperature it will
+     * be added or updated in the index, otherwise any emitter at that position will
+     * be removed.
+     *
+     * @param x        local x position in the section.
+     * @param y        local y position in the section.
+     * @param z        local z position in the section.
+     * @param type     new type of the block.
+     * @param state    state id of the new block.
+     * @param emission emission of the new block or 0 if it has none.
+     * @param falloff  falloff scalar of the new block.
+     * @param open     if the new block is an open door, trapdoor or fence gate.
+     */
+    void setBlock(int x, int y, int z, Material type, int state, double emission, double falloff, boolean open) {
+        short pos = pack(x, y, z);
+        setPassable(pos, !SOLID[type.ordinal()]);
+        setOpening(pos, open && OPENABLE[type.ordinal()]);
+        classified = false;
+        cells = null;
+        int i = find(pos);
+        boolean emits = emission != 0;
+
+        if (i == -1) {
+            if (emits) add(pos, type, state, emission, falloff);
+            return;
+        }
+
+        if (emits) {
+            types[i] = type;
+            states[i] = (short) state;
+            emissions[i] = emission;
+            falloffs[i] = falloff;
+            return;
+        }
+
+        // Remove the emitter by moving the last one into its place.
+        int last = --emitters;
+        positions[i] = positions[last];
+        types[i] = types[last];
+        states[i] = states[last];
+        emissions[i] = emissions[last];
+        falloffs[i] = falloffs[last];
+        types[last] = null;
+    }
+
+    /**
+     * Writes this section into a buffer using {@link #CACHED_SIZE} bytes.
+     *
+     * @param buf buffer to write to.
+     * @return false if there are too many emitters in the section to be written.
+     */
+    boolean write(ByteBuffer buf) {
+        if (emitters > MAX_CACHED_EMITTERS || openings.length > MAX_CACHED_OPENINGS) return false;
+        int start = buf.position();
+        buf.put((byte) (classified ? 1 : 0));
+        buf.put((byte) 0);
+        buf.putShort((short) openings.length);
+        buf.putShort((short) emitters);
+        buf.putShort((short) 0);
+        for (long bits : passable) buf.putLong(bits);
+        buf.put(coveredLight);
+        buf.putLong(caveCells);
+        for (short pos : openings) buf.putShort(pos);
+        for (int i = 0; i < emitters; i++) {
+            buf.putShort(positions[i]);
+            buf.putShort(states[i]);
+        }
+        buf.position(start + CACHED_SIZE);
+        return true;
+    }
+
+    /**
+     * Reads a section that was written with {@link #write(ByteBuffer)}.
+     *
+     * @param buf   buffer to read from.
+     * @param temps temperature data to get emission values from.
+     */
+    void read(ByteBuffer buf, TemperatureSnapshot temps) {
+        int start = buf.position();
+        classified = buf.get() == 1;
+        buf.get();
+        openings = new short[buf.getShort()];
+        int count = buf.getShort();
+        buf.getShort();
+        for (int i = 0; i < passable.length; i++) passable[i] = buf.getLong();
+        buf.get(coveredLight);
+        caveCells = buf.getLong();
+        for (int i = 0; i < openings.length; i++) openings[i] = buf.getShort();
+        for (int i = 0; i < count; i++) {
+            short pos = buf.getShort();
+            int state = buf.getShort();
+            add(pos, temps.getStateMaterial(state), state,
+                    temps.getBlockEmission(state), temps.getBlockFalloff(state));
+        }
+        buf.position(start + CACHED_SIZE);
+    }
+
+    /**
+     * Returns the combined emission of the section and each 4x4x4 cell in it.
+     * These are built the first time they are needed.
+     *
+     * @return the combined emission of the section.
+     */
+    EmissionCells getCells() {
+        EmissionCells cells = this.cells;
+        if (cells == null) {
+            cells = new EmissionCells(this);
+            this.cells = cells;
+        }
+        return cells;
+    }
+
+    /**
+     * @return a copy of this section that can be changed without affecting
+     *         this one.
+     */
+    ChunkSection copy() {
+        ChunkSection copy = new ChunkSection();
+        System.arraycopy(passable, 0, copy.passable, 0, passable.length);
+        copy.openings = openings;
+        copy.positions = Arrays.copyOf(positions, emitters);
+        copy.types = Arrays.copyOf(types, emitters);
+        copy.states = Arrays.copyOf(states, emitters);
+        copy.emissions = Arrays.copyOf(emissions, emitters);
+        copy.falloffs = Arrays.copyOf(falloffs, emitters);
+        copy.emitters = emitters;
+        copy.copyLight(this);
+        return copy;
+    }
+
+    /**
+     * @param x local x position in the section.
+     * @param y local y position in the section.
+     * @param z local z position in the section.
+     * @return if the block can be passed through.
+     */
+    public boolean isPassable(int x, int y, int z) {
+        int i = pack(x, y, z);
+        return (passable[i >> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * Returns if heat and air can move through a block. This is the same as
+     * {@link #isPassable(int, int, int)} except that open doors, trapdoors and
+     * fence gates can also be moved through.
+     *
+     * @param x local x position in the section.
+     * @param y local y position in the section.
+     * @param z local z position in the section.
+     * @return if heat can move through the block.
+     */
+    public boolean isHeatPassable(int x, int y, int z) {
+        return isPassable(x, y, z)
+                || (openings.length > 0 && Arrays.binarySearch(openings, pack(x, y, z)) >= 0);
+    }
+
+    /**
+     * @param type type of block.
+     * @return if the block is a door, trapdoor or fence gate that can be opened.
+     */
+    public static boolean isOpenable(Material type) {
+        return OPENABLE[type.ordinal()];
+    }
+
+    /**
+     * @param data data of a block.
+     * @return if the block is open.
+     */
+    public static boolean isOpen(BlockData data) {
+        return data instanceof Openable && ((Openable) data).isOpen();
+    }
+
+    /**
+     * @param x local x position in the section.
+     * @param y local y position in the section.
+     * @param z local z position in the section.
+     * @return the index of the emitter at the position or -1 if the block
+     *         does not emit a temperature.
+     */
+    public int getEmitterAt(int x, int y, int z) {
+        return find(pack(x, y, z));
+    }
+
+    /**
+     * @return how many emissive blocks are in this section.
+     */
+    public int getEmitterCount() {
+        return emitters;
+    }
+
+    /**
+     * @param i index of the emitter.
+     * @return the local x position of the emitter.
+     */
+    public int getEmitterX(int i) {
+        return positions[i] & 0xF;
+    }
+
+    /**
+     * @param i index of the emitter.
+     * @return the local y position of the emitter.
+     */
+    public int getEmitterY(int i) {
+        return (positions[i] >> 8) & 0xF;
+    }
+
+    /**
+     * @param i index of the emitter.
+     * @return the local z position of the emitter.
+     */
+    public int getEmitterZ(int i) {
+        return (positions[i] >> 4) & 0xF;
+    }
+
+    /**
+     * @param i index of the emitter.
+     * @return the block type of the emitter.
+     */
+    public Material getEmitterType(int i) {
+        return types[i];
+    }
+
+    /**
+     * @param i index of the emitter.
+     * @return the emission value of the emitter.
+     */
+    public double getEmission(int i) {
+        return emissions[i];
+    }
+
+    /**
+     * @param i index of the emitter.
+     * @return the falloff scalar of the emitter.
+     */
+    public double getFalloff(int i) {
+        return falloffs[i];
+    }
+
+    private void add(short pos, Material type, int state, double emission, double falloff) {
+        if (emitters == positions.length) {
+            int size = Math.max(4, emitters * 2);
+            positions = Arrays.copyOf(positions, size);
+            types = Arrays.copyOf(types, size);
+            states = Arrays.copyOf(states, size);
+            emissions = Arrays.copyOf(emissions, size);
+            falloffs = Arrays.copyOf(falloffs, size);
+        }
+        positions[emitters] = pos;
+        types[emitters] = type;
+        states[emitters] = (short) state;
+        emissions[emitters] = emission;
+        falloffs[emitters] = falloff;
+        emitters++;
+    }
+
+    private void setPassable(int i, boolean value) {
+        if (value) passable[i >> 6] |= 1L << i;
+        else passable[i >> 6] &= ~(1L << i);
+    }
+
+    private int find(short pos) {
+        for (int i = 0; i < emitters; i++) {
+            if (positions[i] == pos) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds or removes an opening. The array is replaced instead of changed as
+     * copies of the section share it.
+     */
+    private void setOpening(short pos, boolean open) {
+        int i = Arrays.binarySearch(openings, pos);
+        if (open == i >= 0) return;
+        short[] updated = new short[openings.length + (open ? 1 : -1)];
+        if (open) {
+            int at = -i - 1;
+            System.arraycopy(openings, 0, updated, 0, at);
+            updated[at] = pos;
+            System.arraycopy(openings, at, updated, at + 1, openings.length - at);
+        } else {
+            System.arraycopy(openings, 0, updated, 0, i);
+            System.arraycopy(openings, i + 1, updated, i, openings.length - i - 1);
+        }
+        openings = updated;
+    }
+
+    private static short pack(int x, int y, int z) {
+        return (short) (y << 8 | z << 4 | x);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.world;
+
+import me.masstrix.eternalnature.EternalNature;
+import me.masstrix.eternalnature.config.ConfigOption;
+import me.masstrix.eternalnature.config.SystemConfig;
+import me.masstrix.eternalnature.core.temperature.TemperatureSnapshot;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.util.Vector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Gets chunks ready for temperature lookups before fast moving players reach
+ * them. The path of each player is followed along their heading for a few
+ * seconds and every chunk it crosses is indexed if it's out of date, or has its
+ * biome grid worked out if it's not.
+ * <p>
+ * Indexing is done off the main thread. Only a set number of chunks can be
+ * indexing for the prefetcher at once across all worlds so a lot of players
+ * flying at once can't flood the server with work. Chunks that are not loaded
+ * are skipped since loading them costs far more than indexing them.
+ */
+public class ClimatePrefetcher {
+
+    // Slowest speed in blocks per tick to prefetch for, a little over sprinting.
+    private static final double minSpeed = 0.35;
+    // Distance between points on the path, less than a chunk so none are missed.
+    private static final int step = 8;
+
+    private final EternalNature plugin;
+    private final List<ChunkData> inFlight = new ArrayList<>();
+
+    public ClimatePrefetcher(EternalNature plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Prepares the chunks ahead of a player. Nothing is done if the player is
+     * not moving fast enough.
+     *
+     * @param worldData world the player is in.
+     * @param loc       current location of the player.
+     * @param motion    last motion of the player.
+     */
+    public void prefetch(WorldData worldData, Location loc, Vector motion) {
+        SystemConfig config = plugin.getSystemConfig();
+        World world = loc.getWorld();
+        if (world == null || !config.isEnabled(ConfigOption.TEMPERATURE_PREFETCH)) return;
+
+        // Motion is stored from the new position to the old one.
+        double dx = -motion.getX(), dz = -motion.getZ();
+        double speed = Math.sqrt(dx * dx + dz * dz);
+        if (speed < minSpeed) return;
+
+        inFlight.removeIf(chunk -> !chunk.isIndexing());
+        int cap = config.getInt(ConfigOption.TEMPERATURE_PREFETCH_IN_FLIGHT);
+        if (inFlight.size() >= cap) return;
+
+        TemperatureSnapshot temps = worldData.getTemperatures().getSnapshot();
+        int bucket = temps.getDayBucket(world);
+        double distance = speed * 20 * config.getDouble(ConfigOption.TEMPERATURE_PREFETCH_SECONDS);
+        double ux = dx / speed, uz = dz / speed;
+        int lastX = loc.getBlockX() >> 4, lastZ = loc.getBlockZ() >> 4;
+
+        // Nearest chunks are done first as they will be reached first.
+        for (double d = step; d <= distance; d += step) {
+            int cx = (int) Math.floor(loc.getX() + ux * d) >> 4;
+            int cz = (int) Math.floor(loc.getZ() + uz * d) >> 4;
+            if (cx == lastX && cz == lastZ) continue;
+            lastX = cx;
+            lastZ = cz;
+            if (!world.isChunkLoaded(cx, cz)) continue;
+
+            ChunkData chunk = worldData.getChunk(cx, cz);
+            if (chunk == null) {
+                worldData.loadChunk(world.getChunkAt(cx, cz));
+                chunk = worldData.getChunk(cx, cz);
+                if (chunk == null) continue;
+            } else if (chunk.isIndexing()) {
+                continue;
+            } else {
+                chunk.prepare(world, temps, bucket);
+            }
+
+            if (chunk.isIndexing()) {
+                inFlight.add(chunk);
+                if (inFlight.size() >= cap) return;
+            }
+        }
+    }
+
+    /**
+     * @return how many chunks are being indexed for the prefetcher.
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.world;
+
+import org.bukkit.Material;
+
+/**
+ * Arrays that a scanner reuses between its scans, so a scan does not have to
+ * allocate and grow new ones each time. Scans grow the arrays as needed and
+ * hand them back once finished. Only one scan may use a buffer at a time.
+ */
+final class EmissionBuffer {
+
+    int[] posX = new int[16], posY = new int[16], posZ = new int[16];
+    double[] dx = new double[16], dy = new double[16], dz = new double[16];
+    double[] emission = new double[16], falloff = new double[16];
+    double[] values = new double[16];
+    Material[] types = new Material[16];
+
+    double[] farX = new double[8], farY = new double[8], farZ = new double[8];
+    double[] farWeight = new double[8];
+    int[] farCount = new int[8];
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.world;
+
+/**
+ * Combined emission of the blocks in a section, both for the whole section and
+ * for each 4x4x4 cell in it. Far away the emission of a group of blocks is
+ * close enough to one block at their center with their combined emission, so
+ * scans can use these instead of every block in them.
+ * <p>
+ * Each group keeps the sum of {@code emission * scalar}, which is what reaches
+ * a point further away than any of the blocks scalars, and the center of that
+ * emission. Groups are stored with the section as index {@link #SECTION} and
+ * each cell at {@code (y << 4 | z << 2 | x)} of its cell position.
+ */
+final class EmissionCells {
+
+    static final int CELL_SIZE = 4;
+    static final int CELLS = 64;
+    static final int SECTION = CELLS;
+    // Mean squared distance between two points in a cell, used as how far
+    // the emitters in a cell are from a point in the same cell.
+    private static final double nearDistance2 = CELL_SIZE * CELL_SIZE / 2D;
+
+    private final int[] count = new int[CELLS + 1];
+    private final double[] weight = new double[CELLS + 1];
+    private final double[] near = new double[CELLS + 1];
+    private final float[] centerX = new float[CELLS + 1];
+    private final float[] centerY = new float[CELLS + 1];
+    private final float[] centerZ = new float[CELLS + 1];
+    private final double[] maxScalar = new double[CELLS + 1];
+
+    // Emitter indexes sorted by the cell they are in.
+    private final int[] cellStart = new int[CELLS + 1];
+    private final int[] emitters;
+
+    /**
+     * Builds the cells from the emitters in a section.
+     *
+     * @param section section to build from.
+     */
+    EmissionCells(ChunkSection section) {
+        int total = section.getEmitterCount();
+        double[] absWeight = new double[CELLS + 1];
+        double[] sumX = new double[CELLS + 1];
+        double[] sumY = new double[CELLS + 1];
+        double[] sumZ = new double[CELLS + 1];
+        int[] cellOf = new int[total];
+
+        for (int i = 0; i < total; i++) {
+            int x = section.getEmitterX(i), y = section.getEmitterY(i), z = section.getEmitterZ(i);
+            int cell = cellIndex(x / CELL_SIZE, y / CELL_SIZE, z / CELL_SIZE);
+            cellOf[i] = cell;
+            double scalar = section.getFalloff(i);
+            double w = section.getEmission(i) * scalar;
+            double a = Math.abs(w);
+            for (int k = 0; k < 2; k++) {
+                int c = k == 0 ? cell : SECTION;
+                count[c]++;
+                weight[c] += w;
+                near[c] += section.getEmission(i) * Math.min(scalar / nearDistance2, 1);
+                absWeight[c] += a;
+                sumX[c] += a * x;
+                sumY[c] += a * y;
+                sumZ[c] += a * z;
+                maxScalar[c] = Math.max(maxScalar[c], scalar);
+            }
+        }
+
+        for (int c = 0; c <= CELLS; c++) {
+            if (absWeight[c] > 0) {
+                centerX[c] = (float) (sumX[c] / absWeight[c]);
+                centerY[c] = (float) (sumY[c] / absWeight[c]);
+                centerZ[c] = (float) (sumZ[c] / absWeight[c]);
+            } else {
+                int size = c == SECTION ? ChunkSection.SIZE : CELL_SIZE;
+                centerX[c] = c == SECTION ? 0 : (c & 3) * CELL_SIZE;
+                centerY[c] = c == SECTION ? 0 : (c >> 4) * CELL_SIZE;
+                centerZ[c] = c == SECTION ? 0 : ((c >> 2) & 3) * CELL_SIZE;
+                centerX[c] += (size - 1) / 2F;
+                centerY[c] += (size - 1) / 2F;
+                centerZ[c] += (size - 1) / 2F;
+            }
+        }
+
+        // Sort the emitters by cell.
+        int[] next = new int[CELLS];
+        for (int c = 0, start = 0; c < CELLS; c++) {
+            cellStart[c] = start;
+            next[c] = start;
+            start += count[c];
+        }
+        cellStart[CELLS] = total;
+        emitters = new int[total];
+        for (int i = 0; i < total; i++) {
+            emitters[next[cellOf[i]]++] = i;
+        }
+    }
+
+    /**
+     * @param x cell x position from 0 to 3.
+     * @param y cell y position from 0 to 3.
+     * @param z cell z position from 0 to 3.
+     * @return the index of the cell.
+     */
+    static int cellIndex(int x, int y, int z) {
+        return y << 4 | z << 2 | x;
+    }
+
+    /**
+     * @param c index of the group.
+     * @return how many emitters are in the group.
+     */
+    int getCount(int c) {
+        return count[c];
+    }
+
+    /**
+     * @param c index of the group.
+     * @return the combined {@code emission * scalar} of the group.
+     */
+    double getWeight(int c) {
+        return weight[c];
+    }
+
+    /**
+     * Returns the emission of the group as a scan would find it from inside of
+     * the group, with each emitter falling off over the mean distance between
+     * two points in a cell.
+     *
+     * @param c index of the group.
+     * @return the combined emission of the group felt from inside of it.
+     */
+    double getNear(int c) {
+        return near[c];
+    }
+
+    /**
+     * @param c index of the group.
+     * @return the local x position of the center of the groups emission.
+     */
+    float getCenterX(int c) {
+        return centerX[c];
+    }
+
+    /**
+     * @param c index of the group.
+     * @return the local y position of the center of the groups emission.
+     */
+    float getCenterY(int c) {
+        return centerY[c];
+    }
+
+    /**
+     * @param c index of the group.
+     * @return the local z position of the center of the groups emission.
+     */
+    float getCenterZ(int c) {
+        return centerZ[c];
+    }
+
+    /**
+     * @param c index of the group.
+     * @return the highest falloff scalar of any emitter in the group.
+     */
+    double getMaxScalar(int c) {
+        return maxScalar[c];
+    }
+
+    /**
+     * @param cell index of the cell.
+     * @return where the cells emitters start in {@link #getEmitter(int)}.
+     */
+    int getCellStart(int cell) {
+        return cellStart[cell];
+    }
+
+    /**
+     * @param cell index of the cell.
+     * @return where the cells emitters end in {@link #getEmitter(int)}.
+     */
+    int getCellEnd(int cell) {
+        return cellStart[cell] + count[cell];
+    }
+
+    /**
+     * @param i position in the cell sorted emitters.
+     * @return the index of the emitter in its section.
+     */
+    int getEmitter(int i) {
+        return emitters[i];
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.world;
+
+/**
+ * Calculates how much emission reaches a point from a batch of emitters stored
+ * in flat arrays. This is the Java 8 version of the class and always uses
+ * {@link ScalarEmissionKernel}. The jar also holds a Java 17 version under
+ * {@code META-INF/versions/17} which uses {@code VectorEmissionKernel} when
+ * the server is started with {@code --add-modules jdk.incubator.vector}.
+ */
+final class EmissionKernel {
+
+    private EmissionKernel() {}
+
+    /**
+     * @return if emitters are processed in vector lanes.
+     */
+    static boolean isVectorized() {
+        return false;
+    }
+
+    /**
+     * Calculates the falloff of each emitter. An emitter at the center keeps its
+     * full emission, otherwise it is scaled by {@code min(scalar / d², 1)}.
+     *
+     * @param dx       x distance of each emitter from the center.
+     * @param dy       y distance of each emitter from the center.
+     * @param dz       z distance of each emitter from the center.
+     * @param emission emission of each emitter.
+     * @param scalar   falloff scalar of each emitter.
+     * @param out      array to write the falloff of each emitter into.
+     * @param count    how many emitters are in the arrays.
+     */
+    static void falloff(double[] dx, double[] dy, double[] dz, double[] emission,
+                        double[] scalar, double[] out, int count) {
+        ScalarEmissionKernel.falloff(dx, dy, dz, emission, scalar, out, count);
+    }
+
+    /**
+     * @param values values to add.
+     * @param count  how many values to add.
+     * @return the sum of the values.
+     */
+    static double sum(double[] values, int count) {
+        return ScalarEmissionKernel.sum(values, count);
+    }
+}
@@ -0,0 +1,634 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.world;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.Arrays;
+
+/**
+ * A single scan of the blocks emitting a temperature around a center block.
+ * The chunk sections covering the scan are captured when it is created on the
+ * main thread. If every chunk was indexed the scan only reads those sections and
+ * can be run on any thread.
+ */
+public class EmissionScan implements Runnable {
+
+    // How small a group of blocks has to look from the center before it's
+    // used instead of each block in it. This is the groups size over its
+    // distance.
+    private static final double farFieldRatio = 0.5;
+
+    private final World world;
+    private final int centerX, centerY, centerZ;
+    private final int minX, minY, minZ;
+    private final int maxX, maxY, maxZ;
+    private final int dmgTemp;
+    private final boolean spherical;
+    private final boolean farField;
+    private final double radiusXZ, radiusY;
+    private final int chunkMinX, chunkMinZ;
+    private final int chunksX, chunksZ;
+    private final ChunkSection[] sections;
+    private final boolean indexed;
+
+    private double total;
+    private double hottest = Double.NEGATIVE_INFINITY;
+    private double coldest;
+    private int emitters;
+    private Material hot, cold;
+    private volatile boolean complete;
+
+    // Emitters gathered by the scan. They are all processed at once when the
+    // scan is finished. The arrays come from the buffer and are handed back
+    // to it, grown if needed, once the scan is finished.
+    private final EmissionBuffer buffer;
+    private int count;
+    private int[] posX, posY, posZ;
+    private double[] dx, dy, dz;
+    private double[] emission, falloff, values;
+    private Material[] types;
+
+    // Groups of far away emitters used in place of each emitter.
+    private int farGroups;
+    private double[] farX, farY, farZ;
+    private double[] farWeight;
+    private int[] farCount;
+
+    // Emitters that were traced for solid blocks in the way and how much of
+    // their emission reached the center. Far groups are stored with NaN.
+    private int traced;
+    private int[] tracedX = new int[4], tracedY = new int[4], tracedZ = new int[4];
+    private double[] tracedValue = new double[4];
+
+    /**
+     * Captures the sections needed to scan around a block.
+     *
+     * @param worldData world the scan is in.
+     * @param world     world to look up blocks from that are not in an indexed chunk.
+     *                  This is only used if a chunk in the area has not been indexed.
+     * @param x         x position of the center block.
+     * @param y         y position of the center block.
+     * @param z         z position of the center block.
+     * @param area      x z area to scan in.
+     * @param height    y height to scan in.
+     * @param dmgTemp   temperature that emitters have to be above to be ray traced.
+     * @param spherical should only blocks inside of a sphere fitting the area be
+     *                  scanned instead of the whole box.
+     * @param farField  should far away groups of emitters be combined into one.
+     */
+    public EmissionScan(WorldData worldData, World world, int x, int y, int z,
+                        int area, int height, int dmgTemp, boolean spherical,
+                        boolean farField) {
+        this(worldData, world, x, y, z, area, height, dmgTemp, spherical, farField, new EmissionBuffer());
+    }
+
+    /**
+     * Captures the sections needed to scan around a block, gathering emitters
+     * into arrays reused from earlier scans.
+     *
+     * @param worldData world the scan is in.
+     * @param world     world to look up blocks from that are not in an indexed chunk.
+     * @param x         x position of the center block.
+     * @param y         y position of the center block.
+     * @param z         z position of the center block.
+     * @param area      x z area to scan in.
+     * @param height    y height to scan in.
+     * @param dmgTemp   temperature that emitters have to be above to be ray traced.
+     * @param spherical should only blocks inside of a sphere fitting the area be scanned.
+     * @param farField  should far away groups of emitters be combined into one.
+     * @param buffer    arrays to gather emitters into. No other scan may use them
+     *                  until this one is finished.
+     */
+    EmissionScan(WorldData worldData, World world, int x, int y, int z,
+                 int area, int height, int dmgTemp, boolean spherical,
+                 boolean farField, EmissionBuffer buffer) {
+        this.buffer = buffer;
+        this.posX = buffer.posX;
+        this.posY = buffer.posY;
+        this.posZ = buffer.posZ;
+        this.dx = buffer.dx;
+        this.dy = buffer.dy;
+        this.dz = buffer.dz;
+        this.emission = buffer.emission;
+        this.falloff = buffer.falloff;
+        this.values = buffer.values;
+        this.types = buffer.types;
+        this.farX = buffer.farX;
+        this.farY = buffer.farY;
+        this.farZ = buffer.farZ;
+        this.farWeight = buffer.farWeight;
+        this.farCount = buffer.farCount;
+        this.centerX = x;
+        this.centerY = y;
+        this.centerZ = z;
+        this.minX = x - area / 2;
+        this.minY = y - height / 2;
+        this.minZ = z - area / 2;
+        this.maxX = minX + area - 1;
+        this.maxY = minY + height - 1;
+        this.maxZ = minZ + area - 1;
+        this.dmgTemp = dmgTemp;
+        this.spherical = spherical;
+        this.farField = farField;
+        this.radiusXZ = area / 2D;
+        this.radiusY = height / 2D;
+        this.chunkMinX = minX >> 4;
+        this.chunkMinZ = minZ >> 4;
+        this.chunksX = (maxX >> 4) - chunkMinX + 1;
+        this.chunksZ = (maxZ >> 4) - chunkMinZ + 1;
+        this.sections = new ChunkSection[chunksX * chunksZ * ChunkSection.SIZE];
+
+        boolean indexed = true;
+        for (int cx = 0; cx < chunksX; cx++) {
+            for (int cz = 0; cz < chunksZ; cz++) {
+                ChunkData chunk = worldData.getChunk(chunkMinX + cx, chunkMinZ + cz);
+                if (chunk == null || !chunk.isIndexed()) {
+                    indexed = false;
+                    continue;
+                }
+                for (int sy = 0; sy < ChunkSection.SIZE; sy++) {
+                    sections[(cx * chunksZ + cz) * ChunkSection.SIZE + sy] = chunk.getSectionData(sy);
+                }
+            }
+        }
+        this.indexed = indexed;
+
+        // Indexed scans may be run off the main thread so the world must never
+        // be used by them.
+        this.world = indexed ? null : world;
+    }
+
+    /**
+     * @return if every chunk in the scan area has been indexed. If not the emitters
+     *         have to be provided with {@link #emit(int, int, int, Material, double, double)}.
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Scans all the indexed emitters in the area. If far field scanning is enabled
+     * whole sections or cells of them that are far enough away are added as one
+     * emitter, otherwise every emitter is added.
+     */
+    @Override
+    public void run() {
+        for (int cx = 0; cx < chunksX; cx++) {
+            for (int cz = 0; cz < chunksZ; cz++) {
+                for (int sy = Math.max(minY, 0) >> 4; sy <= Math.min(maxY >> 4, 15); sy++) {
+                    ChunkSection section = sections[(cx * chunksZ + cz) * ChunkSection.SIZE + sy];
+                    if (section == null || section.getEmitterCount() == 0) continue;
+
+                    int baseX = (chunkMinX + cx) << 4;
+                    int baseY = sy << 4;
+                    int baseZ = (chunkMinZ + cz) << 4;
+                    if (!farField) {
+                        for (int i = 0; i < section.getEmitterCount(); i++) {
+                            emitIndexed(section, i, baseX, baseY, baseZ);
+                        }
+                        continue;
+                    }
+
+                    EmissionCells cells = section.getCells();
+                    if (addFarGroup(cells, EmissionCells.SECTION, ChunkSection.SIZE,
+                            baseX, baseY, baseZ, baseX, baseY, baseZ)) continue;
+
+                    for (int cell = 0; cell < EmissionCells.CELLS; cell++) {
+                        if (cells.getCount(cell) == 0) continue;
+                        int cellX = baseX + (cell & 3) * EmissionCells.CELL_SIZE;
+                        int cellY = baseY + (cell >> 4) * EmissionCells.CELL_SIZE;
+                        int cellZ = baseZ + ((cell >> 2) & 3) * EmissionCells.CELL_SIZE;
+                        if (addFarGroup(cells, cell, EmissionCells.CELL_SIZE,
+                                baseX, baseY, baseZ, cellX, cellY, cellZ)) continue;
+
+                        for (int n = cells.getCellStart(cell); n < cells.getCellEnd(cell); n++) {
+                            emitIndexed(section, cells.getEmitter(n), baseX, baseY, baseZ);
+                        }
+                    }
+                }
+            }
+        }
+        finish();
+    }
+
+    private void emitIndexed(ChunkSection section, int i, int baseX, int baseY, int baseZ) {
+        int x = baseX + section.getEmitterX(i);
+        int y = baseY + section.getEmitterY(i);
+        int z = baseZ + section.getEmitterZ(i);
+        if (!contains(x, y, z)) return;
+        emit(x, y, z, section.getEmitterType(i), section.getEmission(i), section.getFalloff(i));
+    }
+
+    /**
+     * Adds a group of emitters as one if it is far enough away. A group is only
+     * used if it's completely inside of the scan and far enough away that every
+     * emitter in it would have fallen off.
+     *
+     * @param cells  cells of the section the group is in.
+     * @param group  index of the group in the cells.
+     * @param size   size of the group in blocks.
+     * @param baseX  x position of the section.
+     * @param baseY  y position of the section.
+     * @param baseZ  z position of the section.
+     * @param groupX x position of the group.
+     * @param groupY y position of the group.
+     * @param groupZ z position of the group.
+     * @return if the group was added.
+     */
+    private boolean addFarGroup(EmissionCells cells, int group, int size,
+                                int baseX, int baseY, int baseZ,
+                                int groupX, int groupY, int groupZ) {
+        double x = baseX + cells.getCenterX(group);
+        double y = baseY + cells.getCenterY(group);
+        double z = baseZ + cells.getCenterZ(group);
+        double vx = centerX - x, vy = centerY - y, vz = centerZ - z;
+        double d2 = vx * vx + vy * vy + vz * vz;
+
+        if (size * size > farFieldRatio * farFieldRatio * d2) return false;
+        if (d2 < cells.getMaxScalar(group)) return false;
+        if (!containsBox(groupX, groupY, groupZ, size)) return false;
+
+        if (farGroups == farX.length) {
+            int length = farGroups * 2;
+            farX = Arrays.copyOf(farX, length);
+            farY = Arrays.copyOf(farY, length);
+            farZ = Arrays.copyOf(farZ, length);
+            farWeight = Arrays.copyOf(farWeight, length);
+            farCount = Arrays.copyOf(farCount, length);
+        }
+        farX[farGroups] = x;
+        farY[farGroups] = y;
+        farZ[farGroups] = z;
+        farWeight[farGroups] = cells.getWeight(group);
+        farCount[farGroups] = cells.getCount(group);
+        farGroups++;
+        return true;
+    }
+
+    /**
+     * @param x    x position of the box.
+     * @param y    y position of the box.
+     * @param z    z position of the box.
+     * @param size size of the box.
+     * @return if every block in the box is inside of the scanned area.
+     */
+    private boolean containsBox(int x, int y, int z, int size) {
+        int s = size - 1;
+        return contains(x, y, z) && contains(x + s, y, z)
+                && contains(x, y + s, z) && contains(x + s, y + s, z)
+                && contains(x, y, z + s) && contains(x + s, y, z + s)
+                && contains(x, y + s, z + s) && contains(x + s, y + s, z + s);
+    }
+
+    /**
+     * Processes every emitter that was added and marks the scan as complete.
+     */
+    void finish() {
+        double[] values = this.values;
+        EmissionKernel.falloff(dx, dy, dz, emission, falloff, values, count);
+
+        boolean first = true;
+        for (int i = 0; i < count; i++) {
+            double fallOff = values[i];
+
+            // Check if here should be block dissipation. For every solid
+            // block between the emitter and the center there is a 50%
+            // reduction in temperature emission from the block.
+            if (fallOff > hottest && fallOff > dmgTemp) {
+                int solid = countSolidBlocks(posX[i], posY[i], posZ[i], centerX, centerY, centerZ);
+                if (solid > 0) {
+                    fallOff *= Math.pow(0.5, solid);
+                    values[i] = fallOff;
+                }
+                addTraced(posX[i], posY[i], posZ[i], fallOff);
+            }
+
+            if (fallOff != 0) emitters++;
+
+            // Apply temperatures to hot and cold values
+            if (first) {
+                hottest = fallOff;
+                coldest = fallOff;
+                first = false;
+            } else if (fallOff > hottest) {
+                hottest = fallOff;
+                hot = types[i];
+            } else if (fallOff < coldest) {
+                coldest = fallOff;
+                cold = types[i];
+            }
+        }
+        total = EmissionKernel.sum(values, count);
+
+        // Add the far away groups. They are treated like a single emitter in
+        // the middle of the group.
+        for (int i = 0; i < farGroups; i++) {
+            double vx = centerX - farX[i], vy = centerY - farY[i], vz = centerZ - farZ[i];
+            double fallOff = farWeight[i] / (vx * vx + vy * vy + vz * vz);
+            if (fallOff > hottest && fallOff > dmgTemp) {
+                int x = (int) Math.round(farX[i]), y = (int) Math.round(farY[i]), z = (int) Math.round(farZ[i]);
+                int solid = countSolidBlocks(x, y, z, centerX, centerY, centerZ);
+                if (solid > 0) fallOff *= Math.pow(0.5, solid);
+                addTraced(x, y, z, Double.NaN);
+            }
+            if (fallOff != 0) emitters += farCount[i];
+            total += fallOff;
+        }
+        release();
+        complete = true;
+    }
+
+    /**
+     * Hands the arrays back to the buffer so the next scan can use them,
+     * including any that were grown by this scan.
+     */
+    private void release() {
+        buffer.posX = posX;
+        buffer.posY = posY;
+        buffer.posZ = posZ;
+        buffer.dx = dx;
+        buffer.dy = dy;
+        buffer.dz = dz;
+        buffer.emission = emission;
+        buffer.falloff = falloff;
+        buffer.values = values;
+        buffer.types = types;
+        buffer.farX = farX;
+        buffer.farY = farY;
+        buffer.farZ = farZ;
+        buffer.farWeight = farWeight;
+        buffer.farCount = farCount;
+    }
+
+    private void addTraced(int x, int y, int z, double value) {
+        if (traced == tracedX.length) {
+            int size = traced * 2;
+            tracedX = Arrays.copyOf(tracedX, size);
+            tracedY = Arrays.copyOf(tracedY, size);
+            tracedZ = Arrays.copyOf(tracedZ, size);
+            tracedValue = Arrays.copyOf(tracedValue, size);
+        }
+        tracedX[traced] = x;
+        tracedY[traced] = y;
+        tracedZ[traced] = z;
+        tracedValue[traced] = value;
+        traced++;
+    }
+
+    /**
+     * @return if the scan has finished.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Adds a block that emits a temperature to the scan. The emission falls off
+     * the further away it is from the center.
+     *
+     * @param x      x position of the emitting block.
+     * @param y      y position of the emitting block.
+     * @param z      z position of the emitting block.
+     * @param type   type of the emitting block.
+     * @param temp   emission of the block.
+     * @param scalar falloff scalar of the block.
+     */
+    void emit(int x, int y, int z, Material type, double temp, double scalar) {
+        if (count == posX.length) {
+            int size = count * 2;
+            posX = Arrays.copyOf(posX, size);
+            posY = Arrays.copyOf(posY, size);
+            posZ = Arrays.copyOf(posZ, size);
+            dx = Arrays.copyOf(dx, size);
+            dy = Arrays.copyOf(dy, size);
+            dz = Arrays.copyOf(dz, size);
+            emission = Arrays.copyOf(emission, size);
+            falloff = Arrays.copyOf(falloff, size);
+            values = new double[size];
+            types = Arrays.copyOf(types, size);
+        }
+        posX[count] = x;
+        posY[count] = y;
+        posZ[count] = z;
+        dx[count] = centerX - x;
+        dy[count] = centerY - y;
+        dz[count] = centerZ - z;
+        emission[count] = temp;
+        falloff[count] = scalar;
+        types[count] = type;
+        count++;
+    }
+
+    /**
+     * Returns how much of a blocks emission reaches the center of the scan. This
+     * does not include any reduction from solid blocks in the way.
+     *
+     * @param x      x position of the emitting block.
+     * @param y      y position of the emitting block.
+     * @param z      z position of the emitting block.
+     * @param temp   emission of the block.
+     * @param scalar falloff scalar of the block.
+     * @return the emission at the center.
+     */
+    public double getFallOff(int x, int y, int z, double temp, double scalar) {
+        double vx = centerX - x;
+        double vy = centerY - y;
+        double vz = centerZ - z;
+        double d2 = vx * vx + vy * vy + vz * vz;
+        return d2 == 0 ? temp : temp * Math.min(scalar / d2, 1);
+    }
+
+    /**
+     * Returns how much the emission reaching the center changes when a block in
+     * the scan changes. The old emission is taken as what this scan found got
+     * through for the block. If the new emission is hot enough to be traced it is
+     * traced now against the sections of this scan.
+     *
+     * @param x         x position of the block.
+     * @param y         y position of the block.
+     * @param z         z position of the block.
+     * @param oldTemp   emission of the block before it changed.
+     * @param oldScalar falloff scalar of the block before it changed.
+     * @param newTemp   emission of the block after it changed.
+     * @param newScalar falloff scalar of the block after it changed.
+     * @return the change in emission at the center.
+     */
+    public double getChange(int x, int y, int z, double oldTemp, double oldScalar,
+                            double newTemp, double newScalar) {
+        double oldValue = getFallOff(x, y, z, oldTemp, oldScalar);
+        for (int i = 0; i < traced; i++) {
+            if (tracedX[i] == x && tracedY[i] == y && tracedZ[i] == z && !Double.isNaN(tracedValue[i])) {
+                oldValue = tracedValue[i];
+                break;
+            }
+        }
+        double newValue = getFallOff(x, y, z, newTemp, newScalar);
+        if (isTraced(newValue)) {
+            int solid = countSolidBlocks(x, y, z, centerX, centerY, centerZ);
+            if (solid > 0) newValue *= Math.pow(0.5, solid);
+        }
+        return newValue - oldValue;
+    }
+
+    /**
+     * @param fallOff emission of a block at the center.
+     * @return if a block with the emission could be traced for blocks in the way.
+     */
+    public boolean isTraced(double fallOff) {
+        return fallOff > dmgTemp;
+    }
+
+    /**
+     * Returns if a block is close to the line between the center and any emitter
+     * that was traced, so changing if it's solid could change how much of that
+     * emitter got through.
+     *
+     * @param x x block position.
+     * @param y y block position.
+     * @param z z block position.
+     * @return if the block could be on a traced ray.
+     */
+    public boolean isOnTracedRay(int x, int y, int z) {
+        double px = x - centerX, py = y - centerY, pz = z - centerZ;
+        for (int i = 0; i < traced; i++) {
+            double rx = tracedX[i] - centerX, ry = tracedY[i] - centerY, rz = tracedZ[i] - centerZ;
+            double length = rx * rx + ry * ry + rz * rz;
+            if (length == 0) continue;
+            double t = (px * rx + py * ry + pz * rz) / length;
+            if (t <= 0 || t >= 1) continue;
+            double ox = px - rx * t, oy = py - ry * t, oz = pz - rz * t;
+            // Half the diagonal of a block, so every block the walk visits is included.
+            if (ox * ox + oy * oy + oz * oz <= 0.75) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param x x block position.
+     * @param y y block position.
+     * @param z z block position.
+     * @return if the block is inside of the scanned area.
+     */
+    public boolean contains(int x, int y, int z) {
+        if (x < minX || x > maxX || y < minY || y > maxY || z < minZ || z > maxZ) return false;
+        if (!spherical) return true;
+        double dx = (x - centerX) / radiusXZ;
+        double dy = (y - centerY) / radiusY;
+        double dz = (z - centerZ) / radiusXZ;
+        return dx * dx + dy * dy + dz * dz <= 1;
+    }
+
+    public int getCenterX() {
+        return centerX;
+    }
+
+    public int getCenterY() {
+        return centerY;
+    }
+
+    public int getCenterZ() {
+        return centerZ;
+    }
+
+    /**
+     * Walks a ray through every block between two blocks and counts how many of
+     * them are solid. The start and end blocks are not counted. Blocks in indexed
+     * chunks are checked against the sections passable bits, anything else is
+     * looked up in the world if there is one.
+     *
+     * @param x0 x position of the block to start from.
+     * @param y0 y position of the block to start from.
+     * @param z0 z position of the block to start from.
+     * @param x1 x position of the block to end at.
+     * @param y1 y position of the block to end at.
+     * @param z1 z position of the block to end at.
+     * @return how many solid blocks are between the two blocks.
+     */
+    private int countSolidBlocks(int x0, int y0, int z0, int x1, int y1, int z1) {
+        int dx = Math.abs(x1 - x0), dy = Math.abs(y1 - y0), dz = Math.abs(z1 - z0);
+        int stepX = Integer.signum(x1 - x0);
+        int stepY = Integer.signum(y1 - y0);
+        int stepZ = Integer.signum(z1 - z0);
+
+        // Distance along the ray (0 to 1) between each block boundary on an axis
+        // and to the first boundary, starting from the middle of the block.
+        double deltaX = dx == 0 ? Double.POSITIVE_INFINITY : 1D / dx;
+        double deltaY = dy == 0 ? Double.POSITIVE_INFINITY : 1D / dy;
+        double deltaZ = dz == 0 ? Double.POSITIVE_INFINITY : 1D / dz;
+        double maxX = deltaX / 2, maxY = deltaY / 2, maxZ = deltaZ / 2;
+
+        int x = x0, y = y0, z = z0;
+        int steps = dx + dy + dz;
+        int solid = 0;
+
+        for (int i = 1; i < steps; i++) {
+            if (maxX < maxY && maxX < maxZ) {
+                x += stepX;
+                maxX += deltaX;
+            } else if (maxY < maxZ) {
+                y += stepY;
+                maxY += deltaY;
+            } else {
+                z += stepZ;
+                maxZ += deltaZ;
+            }
+            if (y < 0 || y > 255) continue;
+            if (!isPassable(x, y, z)) solid++;
+        }
+        return solid;
+    }
+
+    private boolean isPassable(int x, int y, int z) {
+        int cx = (x >> 4) - chunkMinX;
+        int cz = (z >> 4) - chunkMinZ;
+        if (cx >= 0 && cx < chunksX && cz >= 0 && cz < chunksZ) {
+            ChunkSection section = sections[(cx * chunksZ + cz) * ChunkSection.SIZE + (y >> 4)];
+            if (section != null) return section.isPassable(x & 0xF, y & 0xF, z & 0xF);
+        }
+        return world == null || world.getBlockAt(x, y, z).isPassable();
+    }
+
+    /**
+     * @return the combined emission of every scanned block.
+     */
+    public double getTotal() {
+        return total;
+    }
+
+    /**
+     * @return how many blocks emitted a temperature.
+     */
+    public int getEmitters() {
+        return emitters;
+    }
+
+    /**
+     * @return the type of the hottest block or null if there was none.
+     */
+    public Material getHot() {
+        return hot;
+    }
+
+    /**
+     * @return the type of the coldest block or null if there was none.
+     */
+    public Material getCold() {
+        return cold;
+    }
+}
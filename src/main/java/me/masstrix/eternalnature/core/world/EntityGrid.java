@@ -0,0 +1,335 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.world;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.ArmorStand;
+import org.bukkit.entity.LivingEntity;
+
+import java.util.Arrays;
+
+/**
+ * A spatial hash of the players and living entities in a world. The world is
+ * split into cubes of {@link #CELL_SIZE} blocks and each entity is kept in a list
+ * for the cube it's in, so finding the entities near a point only looks at the
+ * few cubes around it instead of every entity in the world.
+ * <p>
+ * Entities are stored in flat arrays by slot with each cube being a linked list
+ * of slots. Moving an entity only relinks it if it changed cube. Cubes and the
+ * slots of entity ids are found through open addressing tables so neither a
+ * query nor an update creates any objects.
+ * <p>
+ * The grid is refreshed from the world every few ticks and players are updated
+ * as they are ticked. It must only be used on the main thread.
+ */
+public class EntityGrid {
+
+    public static final int CELL_SIZE = 8;
+    private static final int cellShift = 3;
+
+    /**
+     * Receives the entities found by a query. Implementations should be kept and
+     * reused so a query does not create a new one each time.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+
+        /**
+         * @param entity          entity in range.
+         * @param distanceSquared squared distance from the entity to the point.
+         */
+        void visit(LivingEntity entity, double distanceSquared);
+    }
+
+    private LivingEntity[] entities = new LivingEntity[16];
+    private double[] posX = new double[16];
+    private double[] posY = new double[16];
+    private double[] posZ = new double[16];
+    private long[] cells = new long[16];
+    private int[] next = new int[16];
+    private int[] prev = new int[16];
+    private int[] seen = new int[16];
+    private int[] free = new int[16];
+    private int slots, freeSlots, count;
+    private int generation;
+    private final Location loc = new Location(null, 0, 0, 0);
+
+    // Open addressing table of entity ids to their slot. Empty entries have a slot of -1.
+    private int[] idKeys = new int[32];
+    private int[] idSlots = filled(32);
+    private int idCount;
+
+    // Open addressing table of cubes to the first slot in them.
+    private long[] tableKeys = new long[64];
+    private int[] tableHeads = new int[64];
+    private boolean[] tableUsed = new boolean[64];
+    private int tableCount;
+
+    /**
+     * Updates every living entity in a world and removes any that are no longer
+     * in it.
+     *
+     * @param world world to refresh from.
+     */
+    public void refresh(World world) {
+        generation++;
+        for (LivingEntity entity : world.getLivingEntities()) {
+            if (entity instanceof ArmorStand || entity.isDead()) continue;
+            update(entity, entity.getLocation(loc));
+        }
+        for (int s = 0; s < slots; s++) {
+            if (entities[s] != null && seen[s] != generation) remove(s);
+        }
+
+        // Start the table over once it's mostly cubes that are now empty.
+        if (tableCount > tableKeys.length / 2) rebuildTable();
+    }
+
+    /**
+     * Updates where an entity is, adding it to the grid if it's not in it.
+     *
+     * @param entity entity to update.
+     * @param loc    current location of the entity.
+     */
+    public void update(LivingEntity entity, Location loc) {
+        // Make sure there is room in the table for a new cube.
+        if (tableCount >= tableKeys.length * 3 / 4) rebuildTable();
+
+        double x = loc.getX(), y = loc.getY(), z = loc.getZ();
+        long cell = cellKey(x, y, z);
+        int s = findSlot(entity.getEntityId());
+        if (s == -1) {
+            s = allocate();
+            putSlot(entity.getEntityId(), s);
+            entities[s] = entity;
+            cells[s] = cell;
+            link(s);
+            count++;
+        } else {
+            entities[s] = entity;
+            if (cells[s] != cell) {
+                unlink(s);
+                cells[s] = cell;
+                link(s);
+            }
+        }
+        posX[s] = x;
+        posY[s] = y;
+        posZ[s] = z;
+        seen[s] = generation;
+    }
+
+    /**
+     * Visits every entity within a distance of a point. The grid must not be
+     * changed by the visitor.
+     *
+     * @param x       x position of the point.
+     * @param y       y position of the point.
+     * @param z       z position of the point.
+     * @param radius  max distance from the point.
+     * @param visitor visitor to call for each entity in range.
+     */
+    public void forEachWithin(double x, double y, double z, double radius, Visitor visitor) {
+        double r2 = radius * radius;
+        int minX = floor(x - radius) >> cellShift, maxX = floor(x + radius) >> cellShift;
+        int minY = floor(y - radius) >> cellShift, maxY = floor(y + radius) >> cellShift;
+        int minZ = floor(z - radius) >> cellShift, maxZ = floor(z + radius) >> cellShift;
+
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cz = minZ; cz <= maxZ; cz++) {
+                for (int cy = minY; cy <= maxY; cy++) {
+                    int t = find(pack(cx, cy, cz));
+                    if (t == -1) continue;
+                    for (int s = tableHeads[t]; s != -1; s = next[s]) {
+                        double dx = posX[s] - x, dy = posY[s] - y, dz = posZ[s] - z;
+                        double d2 = dx * dx + dy * dy + dz * dz;
+                        if (d2 <= r2) visitor.visit(entities[s], d2);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return how many entities are in the grid.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Removes every entity from the grid.
+     */
+    public void clear() {
+        if (count == 0) return;
+        for (int s = 0; s < slots; s++) {
+            if (entities[s] != null) remove(s);
+        }
+        rebuildTable();
+    }
+
+    private void remove(int s) {
+        unlink(s);
+        removeSlot(entities[s].getEntityId());
+        entities[s] = null;
+        if (freeSlots == free.length) free = Arrays.copyOf(free, freeSlots * 2);
+        free[freeSlots++] = s;
+        count--;
+    }
+
+    private int allocate() {
+        if (freeSlots > 0) return free[--freeSlots];
+        if (slots == entities.length) {
+            int size = slots * 2;
+            entities = Arrays.copyOf(entities, size);
+            posX = Arrays.copyOf(posX, size);
+            posY = Arrays.copyOf(posY, size);
+            posZ = Arrays.copyOf(posZ, size);
+            cells = Arrays.copyOf(cells, size);
+            next = Arrays.copyOf(next, size);
+            prev = Arrays.copyOf(prev, size);
+            seen = Arrays.copyOf(seen, size);
+        }
+        return slots++;
+    }
+
+    private void link(int s) {
+        int t = insert(cells[s]);
+        int head = tableHeads[t];
+        next[s] = head;
+        prev[s] = -1;
+        if (head != -1) prev[head] = s;
+        tableHeads[t] = s;
+    }
+
+    private void unlink(int s) {
+        if (prev[s] != -1) {
+            next[prev[s]] = next[s];
+        } else {
+            tableHeads[find(cells[s])] = next[s];
+        }
+        if (next[s] != -1) prev[next[s]] = prev[s];
+    }
+
+    private int find(long key) {
+        int mask = tableKeys.length - 1;
+        for (int t = mix(key) & mask; tableUsed[t]; t = (t + 1) & mask) {
+            if (tableKeys[t] == key) return t;
+        }
+        return -1;
+    }
+
+    private int insert(long key) {
+        int mask = tableKeys.length - 1;
+        int t = mix(key) & mask;
+        for (; tableUsed[t]; t = (t + 1) & mask) {
+            if (tableKeys[t] == key) return t;
+        }
+        tableUsed[t] = true;
+        tableKeys[t] = key;
+        tableHeads[t] = -1;
+        tableCount++;
+        return t;
+    }
+
+    private int findSlot(int id) {
+        int mask = idKeys.length - 1;
+        for (int t = mix(id) & mask; idSlots[t] != -1; t = (t + 1) & mask) {
+            if (idKeys[t] == id) return idSlots[t];
+        }
+        return -1;
+    }
+
+    private void putSlot(int id, int slot) {
+        if (idCount >= idKeys.length * 3 / 4) {
+            int[] keys = idKeys, values = idSlots;
+            idKeys = new int[keys.length * 2];
+            idSlots = filled(keys.length * 2);
+            idCount = 0;
+            for (int t = 0; t < keys.length; t++) {
+                if (values[t] != -1) putSlot(keys[t], values[t]);
+            }
+        }
+        int mask = idKeys.length - 1;
+        int t = mix(id) & mask;
+        while (idSlots[t] != -1) t = (t + 1) & mask;
+        idKeys[t] = id;
+        idSlots[t] = slot;
+        idCount++;
+    }
+
+    private void removeSlot(int id) {
+        int mask = idKeys.length - 1;
+        int t = mix(id) & mask;
+        while (idSlots[t] != -1 && idKeys[t] != id) t = (t + 1) & mask;
+        if (idSlots[t] == -1) return;
+        idSlots[t] = -1;
+        idCount--;
+
+        // Move back any entries after it that would no longer be found.
+        for (int n = (t + 1) & mask; idSlots[n] != -1; n = (n + 1) & mask) {
+            int home = mix(idKeys[n]) & mask;
+            if (((n - home) & mask) >= ((n - t) & mask)) {
+                idKeys[t] = idKeys[n];
+                idSlots[t] = idSlots[n];
+                idSlots[n] = -1;
+                t = n;
+            }
+        }
+    }
+
+    private static int[] filled(int size) {
+        int[] array = new int[size];
+        Arrays.fill(array, -1);
+        return array;
+    }
+
+    /**
+     * Builds the table again with only the cubes that have entities in them,
+     * growing it if needed.
+     */
+    private void rebuildTable() {
+        int size = 64;
+        while (size < count * 4) size <<= 1;
+        tableKeys = new long[size];
+        tableHeads = new int[size];
+        tableUsed = new boolean[size];
+        tableCount = 0;
+        for (int s = 0; s < slots; s++) {
+            if (entities[s] != null) link(s);
+        }
+    }
+
+    private static long cellKey(double x, double y, double z) {
+        return pack(floor(x) >> cellShift, floor(y) >> cellShift, floor(z) >> cellShift);
+    }
+
+    private static long pack(int x, int y, int z) {
+        return ((long) x & 0x1FFFFF) << 42 | ((long) z & 0x1FFFFF) << 21 | (y & 0x1FFFFF);
+    }
+
+    private static int mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    private static int floor(double value) {
+        int i = (int) value;
+        return value < i ? i - 1 : i;
+    }
+}
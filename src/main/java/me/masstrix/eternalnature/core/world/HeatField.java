@@ -0,0 +1,238 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.world;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A coarse field of heat from emitting blocks across the loaded chunks of a world.
+ * Each chunk is split into 4x4x4 cells which hold how much heat has reached them.
+ * Every step a cell moves towards the average of its neighbours plus the emission
+ * of the blocks inside of it, while losing some heat, more so if it's open to the
+ * sky. Heat builds up and spreads out over time instead of appearing instantly.
+ * <p>
+ * Steps are run off the main thread a few chunks at a time, limited by a budget of
+ * cells per tick, so the cost does not depend on how many players there are.
+ * <p>
+ * A cell with emitters in it settles at about what a scan would find from inside
+ * of the cell, so turning the simulation on does not change the temperature next
+ * to a heat source. Heat spreads out by averaging instead of by the inverse square
+ * falloff a scan uses, so further away the field is smoother and drops off faster
+ * than a scan would.
+ */
+public class HeatField {
+
+    private static final int CELL_SIZE = EmissionCells.CELL_SIZE;
+    private static final int CELLS_XZ = 4;
+    private static final int CELLS_Y = 64;
+    private static final int CHUNK_CELLS = CELLS_XZ * CELLS_XZ * CELLS_Y;
+    private static final float settled = 0.01F;
+
+    private final WorldData worldData;
+    private final Map<Long, HeatChunk> chunks = new ConcurrentHashMap<>();
+    private long[] order = new long[0];
+    private int cursor;
+    private volatile boolean stepping;
+
+    public HeatField(WorldData worldData) {
+        this.worldData = worldData;
+    }
+
+    /**
+     * Starts the next step of the field if the last one has finished. This should
+     * be called every tick on the main thread.
+     *
+     * @param budget  max number of cells to step. At least one chunk is always
+     *                stepped.
+     * @param loss    how much heat every cell loses each step.
+     * @param skyLoss how much extra heat cells that are open to the sky lose.
+     */
+    void tick(int budget, float loss, float skyLoss) {
+        if (stepping) return;
+
+        // Start again from the first chunk once every chunk has been stepped.
+        if (cursor >= order.length) {
+            chunks.entrySet().removeIf(e -> worldData.getChunk(WorldData.getX(e.getKey()),
+                    WorldData.getZ(e.getKey())) != e.getValue().data);
+            for (ChunkData chunk : worldData.getChunks()) {
+                chunks.computeIfAbsent(chunk.getKey(), k -> new HeatChunk(chunk));
+            }
+            order = chunks.keySet().stream().mapToLong(Long::longValue).toArray();
+            cursor = 0;
+        }
+
+        List<HeatChunk> job = new ArrayList<>();
+        List<int[]> heights = new ArrayList<>();
+        int cells = 0;
+        while (cursor < order.length && cells < budget) {
+            HeatChunk chunk = chunks.get(order[cursor++]);
+            if (chunk == null || !chunk.data.isIndexed() || isSettled(chunk)) continue;
+            job.add(chunk);
+            // Heights are changed in place by block updates so the step gets a copy.
+            int[] columns = chunk.data.getHeights();
+            heights.add(columns == null ? null : columns.clone());
+            cells += CHUNK_CELLS;
+        }
+        if (job.isEmpty()) return;
+
+        stepping = true;
+        worldData.plugin.getEngine().getUserWorker().submit(() -> {
+            for (int i = 0; i < job.size(); i++) {
+                step(job.get(i), heights.get(i), loss, skyLoss);
+            }
+        }, () -> stepping = false);
+    }
+
+    /**
+     * A chunk is settled if nothing in it or next to it has any heat and its blocks
+     * have not changed since it was last stepped. Settled chunks are skipped.
+     */
+    private boolean isSettled(HeatChunk chunk) {
+        if (chunk.hasSource || chunk.max > settled || chunk.sections != chunk.data.getSections())
+            return false;
+        int x = chunk.data.getX(), z = chunk.data.getZ();
+        return isCold(x + 1, z) && isCold(x - 1, z) && isCold(x, z + 1) && isCold(x, z - 1);
+    }
+
+    private boolean isCold(int x, int z) {
+        HeatChunk chunk = chunks.get(WorldData.pair(x, z));
+        return chunk == null || chunk.max <= settled;
+    }
+
+    /**
+     * Steps every cell in a chunk once. This is done in place so heat spreads
+     * through the chunk in a single step.
+     *
+     * @param heights copy of the first free y of each column in the chunk.
+     */
+    private void step(HeatChunk chunk, int[] heights, float loss, float skyLoss) {
+        ChunkData data = chunk.data;
+        int x = data.getX(), z = data.getZ();
+        HeatChunk east = chunks.get(WorldData.pair(x + 1, z));
+        HeatChunk west = chunks.get(WorldData.pair(x - 1, z));
+        HeatChunk south = chunks.get(WorldData.pair(x, z + 1));
+        HeatChunk north = chunks.get(WorldData.pair(x, z - 1));
+
+        // The cells above the highest block in all their columns are open to the sky.
+        int[] skyCell = new int[CELLS_XZ * CELLS_XZ];
+        for (int i = 0; i < skyCell.length; i++) {
+            int top = 0;
+            for (int n = 0; n < CELL_SIZE * CELL_SIZE; n++) {
+                int bx = (i & 3) * CELL_SIZE + (n & 3);
+                int bz = (i >> 2) * CELL_SIZE + (n >> 2);
+                top = heights == null ? Integer.MAX_VALUE : Math.max(top, heights[bz << 4 | bx]);
+            }
+            skyCell[i] = top == Integer.MAX_VALUE ? CELLS_Y : (top + CELL_SIZE - 1) / CELL_SIZE;
+        }
+
+        ChunkSection[] sections = data.getSections();
+        float[] heat = chunk.heat;
+        float max = 0;
+        boolean hasSource = false;
+
+        for (int sy = 0; sy < sections.length; sy++) {
+            ChunkSection section = sections[sy];
+            EmissionCells cells = section == null || section.getEmitterCount() == 0
+                    ? null : section.getCells();
+
+            for (int cell = 0; cell < EmissionCells.CELLS; cell++) {
+                int cx = cell & 3, cz = (cell >> 2) & 3;
+                int cy = (sy << 2) + (cell >> 4);
+                // The emission of the blocks in the cell as felt from inside of it.
+                double source = cells == null ? 0 : cells.getNear(cell);
+                if (source != 0) hasSource = true;
+
+                float k = loss + (cy >= skyCell[cz << 2 | cx] ? skyLoss : 0);
+                float sum = get(heat, cx, cy + 1, cz) + get(heat, cx, cy - 1, cz);
+                sum += cx == 3 ? get(east, 0, cy, cz) : get(heat, cx + 1, cy, cz);
+                sum += cx == 0 ? get(west, 3, cy, cz) : get(heat, cx - 1, cy, cz);
+                sum += cz == 3 ? get(south, cx, cy, 0) : get(heat, cx, cy, cz + 1);
+                sum += cz == 0 ? get(north, cx, cy, 3) : get(heat, cx, cy, cz - 1);
+
+                // Settles where the cell holds its own emission plus whatever its
+                // neighbours pass on to it.
+                float value = (float) ((sum + source * (6 + k)) / (6 + k));
+                heat[index(cx, cy, cz)] = value;
+                max = Math.max(max, Math.abs(value));
+            }
+        }
+        chunk.max = max;
+        chunk.hasSource = hasSource;
+        chunk.sections = sections;
+        chunk.stepped = true;
+    }
+
+    private static float get(HeatChunk chunk, int x, int y, int z) {
+        return chunk == null ? 0 : get(chunk.heat, x, y, z);
+    }
+
+    private static float get(float[] heat, int x, int y, int z) {
+        if (y < 0 || y >= CELLS_Y) return 0;
+        return heat[index(x, y, z)];
+    }
+
+    private static int index(int x, int y, int z) {
+        return (y * CELLS_XZ + z) * CELLS_XZ + x;
+    }
+
+    /**
+     * Returns the heat of the cell a block is in.
+     *
+     * @param x x block position.
+     * @param y y block position.
+     * @param z z block position.
+     * @return the heat at the block or NaN if the chunk has not been simulated.
+     */
+    public double getHeat(int x, int y, int z) {
+        if (y < 0 || y >= CELLS_Y * CELL_SIZE) return Double.NaN;
+        HeatChunk chunk = chunks.get(WorldData.pair(x >> 4, z >> 4));
+        if (chunk == null || !chunk.stepped) return Double.NaN;
+        return chunk.heat[index((x & 0xF) / CELL_SIZE, y / CELL_SIZE, (z & 0xF) / CELL_SIZE)];
+    }
+
+    /**
+     * Removes all heat from the field.
+     */
+    void clear() {
+        chunks.clear();
+        order = new long[0];
+        cursor = 0;
+    }
+
+    /**
+     * @return how many chunks are in the field.
+     */
+    public int size() {
+        return chunks.size();
+    }
+
+    private static class HeatChunk {
+        final ChunkData data;
+        final float[] heat = new float[CHUNK_CELLS];
+        volatile ChunkSection[] sections;
+        volatile float max;
+        volatile boolean hasSource;
+        volatile boolean stepped;
+
+        HeatChunk(ChunkData data) {
+            this.data = data;
+        }
+    }
+}
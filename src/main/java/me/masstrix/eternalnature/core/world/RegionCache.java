@@ -0,0 +1,308 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.world;
+
+import org.bukkit.Bukkit;
+import org.bukkit.block.Biome;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Stores the indexed data of chunks on disk so it does not have to be built again
+ * after a restart. Chunks are grouped into regions of 32x32 chunks, each region is
+ * a memory mapped file where every chunk has a fixed size slot.
+ * <p>
+ * Every slot starts with a stamp, a checksum and the inhabited time of the chunk
+ * when it was written. The stamp is made from the format version and the
+ * temperature data the chunk was indexed with. If either changes, the checksum
+ * does not match or the chunk has been inhabited since, the slot is ignored and
+ * the chunk is indexed again.
+ * <p>
+ * All reads and writes are queued and run in order on a single thread for the
+ * cache, so creating and mapping region files never holds up the main thread.
+ * Regions that have not been used for a while are written out and dropped.
+ */
+public class RegionCache {
+
+    private static final int MAGIC = 0x454E5243;
+    private static final int VERSION = 3;
+    private static final int REGION_SIZE = 32;
+    private static final int HEADER = 16;
+    static final int SLOT = 15 * 1024;
+    static final int SLOT_HEADER = 16;
+    private static final int PLATFORM = Objects.hashCode(Bukkit.getBukkitVersion()) * 31 + Biome.values().length;
+    private static final long regionIdle = 60000;
+    private static final long evictInterval = 10000;
+
+    private final File folder;
+    private final Map<Long, Region> regions = new HashMap<>();
+    private ScheduledExecutorService io;
+    private volatile boolean closed;
+
+    /**
+     * @param folder folder to store the region files in.
+     */
+    public RegionCache(File folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Creates the stamp for chunks indexed with some temperature data. The stamp
+     * also covers the server version and the biomes it has, since biomes are
+     * stored by their ordinal.
+     *
+     * @param dataHash hash of the temperature data.
+     * @return the stamp. This is never 0.
+     */
+    static int stamp(int dataHash) {
+        int stamp = (VERSION * 31 + PLATFORM) * 31 + dataHash;
+        return stamp == 0 ? 1 : stamp;
+    }
+
+    /**
+     * Reads a chunks slot on the cache thread and passes it to a callback. The
+     * callback is run on the cache thread, or straight away with null if the
+     * cache is closed.
+     *
+     * @param x         x position of the chunk.
+     * @param z         z position of the chunk.
+     * @param stamp     stamp the data has to have.
+     * @param inhabited inhabited time the chunk has to have.
+     * @param callback  called with the slots data positioned after its header or
+     *                  null if there is no valid data for the chunk.
+     */
+    void read(int x, int z, int stamp, long inhabited, Consumer<ByteBuffer> callback) {
+        if (!execute(() -> callback.accept(readSlot(x, z, stamp, inhabited)))) {
+            callback.accept(null);
+        }
+    }
+
+    /**
+     * Queues a chunks slot to be written.
+     *
+     * @param x         x position of the chunk.
+     * @param z         z position of the chunk.
+     * @param stamp     stamp for the data.
+     * @param inhabited inhabited time of the chunk.
+     * @param data      data to write. This must be {@link #SLOT} bytes long and
+     *                  start with a {@link #SLOT_HEADER} byte header that is
+     *                  filled in.
+     */
+    void write(int x, int z, int stamp, long inhabited, byte[] data) {
+        execute(() -> {
+            MappedByteBuffer region = getRegion(x, z, true);
+            if (region == null) return;
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            buf.putInt(0, stamp);
+            buf.putInt(4, checksum(data));
+            buf.putLong(8, inhabited);
+
+            ByteBuffer slot = region.duplicate();
+            slot.position(slotOffset(x, z));
+            slot.put(data);
+        });
+    }
+
+    /**
+     * Queues the inhabited time of a chunks slot to be updated if it holds data
+     * with a stamp.
+     *
+     * @param x         x position of the chunk.
+     * @param z         z position of the chunk.
+     * @param stamp     stamp the data has to have.
+     * @param inhabited new inhabited time of the chunk.
+     */
+    void touch(int x, int z, int stamp, long inhabited) {
+        execute(() -> {
+            MappedByteBuffer region = getRegion(x, z, false);
+            if (region == null) return;
+            int offset = slotOffset(x, z);
+            if (region.getInt(offset) == stamp) region.putLong(offset + 8, inhabited);
+        });
+    }
+
+    /**
+     * Queues a chunks slot to be removed so it will be indexed fresh next time.
+     *
+     * @param x x position of the chunk.
+     * @param z z position of the chunk.
+     */
+    void invalidate(int x, int z) {
+        execute(() -> {
+            MappedByteBuffer region = getRegion(x, z, false);
+            if (region != null) region.putInt(slotOffset(x, z), 0);
+        });
+    }
+
+    /**
+     * Finishes everything that is queued, writes all regions to disk and stops
+     * using them. Regions are only used by the cache thread so they are written
+     * by the last task it runs. If the queue doesn't finish in time the thread
+     * is stopped and anything left unwritten is dropped.
+     */
+    public void close() {
+        ScheduledExecutorService io;
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            io = this.io;
+        }
+        // Regions are only ever opened on the cache thread.
+        if (io == null) return;
+        io.execute(() -> {
+            regions.values().forEach(r -> r.buffer.force());
+            regions.clear();
+        });
+        io.shutdown();
+        try {
+            if (!io.awaitTermination(10, TimeUnit.SECONDS)) {
+                io.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            io.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs a task on the cache thread, starting it if needed.
+     *
+     * @return false if the cache is closed.
+     */
+    private synchronized boolean execute(Runnable task) {
+        if (closed) return false;
+        if (io == null) {
+            io = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "EternalNature-RegionCache-" + folder.getParentFile().getName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            io.scheduleWithFixedDelay(this::evictIdle, evictInterval, evictInterval, TimeUnit.MILLISECONDS);
+        }
+        try {
+            io.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private ByteBuffer readSlot(int x, int z, int stamp, long inhabited) {
+        MappedByteBuffer region = getRegion(x, z, false);
+        if (region == null) return null;
+        int offset = slotOffset(x, z);
+        if (region.getInt(offset) != stamp || region.getLong(offset + 8) != inhabited) return null;
+
+        byte[] data = new byte[SLOT];
+        ByteBuffer slot = region.duplicate();
+        slot.position(offset);
+        slot.get(data);
+
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        buf.position(SLOT_HEADER);
+        if (buf.getInt(4) != checksum(data)) return null;
+        return buf;
+    }
+
+    /**
+     * Writes out and drops every region that has not been used for a while. The
+     * mapping is released once nothing refers to it any more.
+     */
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<Region> it = regions.values().iterator();
+        while (it.hasNext()) {
+            Region region = it.next();
+            if (now - region.lastUsed < regionIdle) continue;
+            region.buffer.force();
+            it.remove();
+        }
+    }
+
+    private MappedByteBuffer getRegion(int x, int z, boolean create) {
+        int rx = Math.floorDiv(x, REGION_SIZE), rz = Math.floorDiv(z, REGION_SIZE);
+        long key = WorldData.pair(rx, rz);
+        Region cached = regions.get(key);
+        if (cached != null) {
+            cached.lastUsed = System.currentTimeMillis();
+            return cached.buffer;
+        }
+
+        File file = new File(folder, "r." + rx + "." + rz + ".enc");
+        if (!file.exists() && !create) return null;
+        folder.mkdirs();
+
+        long size = HEADER + (long) SLOT * REGION_SIZE * REGION_SIZE;
+        MappedByteBuffer region;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            boolean fresh = raf.length() != size;
+            raf.setLength(size);
+            region = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            // Files from another version or of another size are started over.
+            if (fresh || region.getInt(0) != MAGIC || region.getInt(4) != VERSION
+                    || region.getInt(8) != SLOT) {
+                for (int i = 0; i < REGION_SIZE * REGION_SIZE; i++) {
+                    region.putInt(HEADER + i * SLOT, 0);
+                }
+                region.putInt(0, MAGIC);
+                region.putInt(4, VERSION);
+                region.putInt(8, SLOT);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        regions.put(key, new Region(region));
+        return region;
+    }
+
+    private static int slotOffset(int x, int z) {
+        int lx = Math.floorMod(x, REGION_SIZE), lz = Math.floorMod(z, REGION_SIZE);
+        return HEADER + (lz * REGION_SIZE + lx) * SLOT;
+    }
+
+    private static int checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, SLOT_HEADER, data.length - SLOT_HEADER);
+        return (int) crc.getValue();
+    }
+
+    private static final class Region {
+        final MappedByteBuffer buffer;
+        long lastUsed = System.currentTimeMillis();
+
+        Region(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
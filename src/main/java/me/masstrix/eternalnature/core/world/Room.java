@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.world;
+
+import java.util.Arrays;
+
+/**
+ * A connected space of passable blocks found by a flood fill. A room is enclosed
+ * if the fill finished without reaching any block that is open to the sky. Each
+ * block open to the sky that the fill reached counts as an opening and is not
+ * filled past, so a house with an open door is a room with a few openings instead
+ * of the whole outside world.
+ * <p>
+ * Rooms never change once they are made. They are shared by every player inside
+ * of them and thrown away when a block in them or on their boundary changes.
+ */
+public final class Room {
+
+    private final long[] cells;
+    private final long[] boundary;
+    private final int openings;
+    private final boolean complete;
+    private final int minX, minY, minZ;
+    private final int maxX, maxY, maxZ;
+    private final long created;
+
+    /**
+     * @param cells    packed positions of the blocks in the room. This is sorted.
+     * @param boundary packed positions of the blocks around the room including its
+     *                 openings. This is sorted.
+     * @param openings how many blocks open to the sky were reached.
+     * @param complete if the fill finished before running out of budget.
+     * @param bounds   min x, y, z and max x, y, z of the room and its boundary.
+     * @param created  time the room was made.
+     */
+    Room(long[] cells, long[] boundary, int openings, boolean complete, int[] bounds, long created) {
+        this.cells = cells;
+        this.boundary = boundary;
+        this.openings = openings;
+        this.complete = complete;
+        this.minX = bounds[0];
+        this.minY = bounds[1];
+        this.minZ = bounds[2];
+        this.maxX = bounds[3];
+        this.maxY = bounds[4];
+        this.maxZ = bounds[5];
+        this.created = created;
+    }
+
+    /**
+     * @return how many blocks are in the room.
+     */
+    public int getVolume() {
+        return cells.length;
+    }
+
+    /**
+     * @return how many blocks open to the sky the room reaches.
+     */
+    public int getOpenings() {
+        return openings;
+    }
+
+    /**
+     * @return if the whole room was filled. Rooms that ran out of budget are too
+     *         large to tell if they are enclosed.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return if the room is complete and has no openings.
+     */
+    public boolean isEnclosed() {
+        return complete && openings == 0;
+    }
+
+    /**
+     * Returns how sheltered the room is from the outside. This is 1 for an enclosed
+     * room and halves for each extra opening.
+     *
+     * @return how sheltered the room is from 0 to 1.
+     */
+    public double getShelter() {
+        return complete ? 1D / (1 + openings) : 0;
+    }
+
+    long getCreated() {
+        return created;
+    }
+
+    /**
+     * @param x x block position.
+     * @param y y block position.
+     * @param z z block position.
+     * @return if the block is part of the room.
+     */
+    public boolean contains(int x, int y, int z) {
+        return inBounds(x, y, z) && Arrays.binarySearch(cells, pack(x, y, z)) >= 0;
+    }
+
+    /**
+     * @param x x block position.
+     * @param y y block position.
+     * @param z z block position.
+     * @return if changing the block could change the room.
+     */
+    boolean isAffectedBy(int x, int y, int z) {
+        if (!inBounds(x, y, z)) return false;
+        long pos = pack(x, y, z);
+        return Arrays.binarySearch(cells, pos) >= 0 || Arrays.binarySearch(boundary, pos) >= 0;
+    }
+
+    private boolean inBounds(int x, int y, int z) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+    }
+
+    /**
+     * Packs a block position into a long. Packed positions sort by x, then z,
+     * then y.
+     */
+    static long pack(int x, int y, int z) {
+        return ((long) x & 0x3FFFFFF) << 38 | ((long) z & 0x3FFFFFF) << 12 | (y & 0xFFF);
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.world;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Finds and caches the {@link Room}s of a world. Rooms are found with a flood fill
+ * off the main thread over the indexed sections of the chunks around where it
+ * started. The fill stops once it has visited a set number of blocks so a large
+ * cave costs no more than a small house.
+ * <p>
+ * Only one fill runs at a time for each world. Until a fill is done the space is
+ * treated as having no room. All other methods are called on the main thread.
+ */
+public class RoomCache {
+
+    private static final int chunkRadius = 2;
+    private static final int grid = chunkRadius * 2 + 1;
+    private static final int size = grid * ChunkSection.SIZE;
+    private static final long roomTtl = 30000;
+
+    private final WorldData worldData;
+    private Room[] rooms = new Room[0];
+    private boolean filling;
+    private boolean fillStale;
+    private int fillChunkX, fillChunkZ;
+
+    public RoomCache(WorldData worldData) {
+        this.worldData = worldData;
+    }
+
+    /**
+     * Returns the room a block is in. If no room is known for the block a fill is
+     * started from it.
+     *
+     * @param x      x block position.
+     * @param y      y block position.
+     * @param z      z block position.
+     * @param budget max number of blocks a fill can visit.
+     * @return the room or null if the block is not in a known room yet.
+     */
+    Room find(int x, int y, int z, int budget) {
+        long now = System.currentTimeMillis();
+        for (Room room : rooms) {
+            if (!room.contains(x, y, z)) continue;
+            if (now - room.getCreated() < roomTtl) return room;
+            break;
+        }
+        fill(x, y, z, budget);
+        return null;
+    }
+
+    /**
+     * Removes any rooms that a block change could have changed.
+     *
+     * @param x x block position.
+     * @param y y block position.
+     * @param z z block position.
+     */
+    void invalidate(int x, int y, int z) {
+        if (filling && Math.abs((x >> 4) - fillChunkX) <= chunkRadius
+                && Math.abs((z >> 4) - fillChunkZ) <= chunkRadius) {
+            fillStale = true;
+        }
+        int kept = 0;
+        for (Room room : rooms) {
+            if (!room.isAffectedBy(x, y, z)) kept++;
+        }
+        if (kept == rooms.length) return;
+        Room[] updated = new Room[kept];
+        int i = 0;
+        for (Room room : rooms) {
+            if (!room.isAffectedBy(x, y, z)) updated[i++] = room;
+        }
+        rooms = updated;
+    }
+
+    /**
+     * Removes all rooms.
+     */
+    void clear() {
+        rooms = new Room[0];
+        fillStale = filling;
+    }
+
+    /**
+     * @return the cached rooms. This must not be changed.
+     */
+    Room[] getRooms() {
+        return rooms;
+    }
+
+    /**
+     * @return how many rooms are cached.
+     */
+    public int size() {
+        return rooms.length;
+    }
+
+    private void fill(int x, int y, int z, int budget) {
+        if (filling || y < 0 || y >= 256) return;
+        int chunkX = x >> 4, chunkZ = z >> 4;
+
+        // Sections are never changed once published so they can be read from
+        // another thread. Heights are copied since they change in place.
+        ChunkSection[][] sections = new ChunkSection[grid * grid][];
+        int[][] heights = new int[grid * grid][];
+        for (int i = 0; i < sections.length; i++) {
+            ChunkData chunk = worldData.getChunk(chunkX + i % grid - chunkRadius, chunkZ + i / grid - chunkRadius);
+            if (chunk == null || !chunk.isIndexed()) continue;
+            int[] columns = chunk.getHeights();
+            if (columns == null) continue;
+            sections[i] = chunk.getSections();
+            heights[i] = columns.clone();
+        }
+        if (sections[grid * grid / 2] == null) return;
+
+        filling = true;
+        fillStale = false;
+        fillChunkX = chunkX;
+        fillChunkZ = chunkZ;
+        Room[] result = new Room[1];
+        worldData.plugin.getEngine().getUserWorker().submit(
+                () -> result[0] = flood(x, y, z, sections, heights, budget),
+                () -> {
+                    filling = false;
+                    if (result[0] != null && !fillStale) add(result[0]);
+                });
+    }
+
+    private void add(Room room) {
+        long now = System.currentTimeMillis();
+        int kept = 0;
+        Room[] updated = new Room[rooms.length + 1];
+        for (Room r : rooms) {
+            if (now - r.getCreated() < roomTtl) updated[kept++] = r;
+        }
+        updated[kept++] = room;
+        rooms = Arrays.copyOf(updated, kept);
+    }
+
+    /**
+     * Flood fills the blocks heat can move through connected to a block, so open
+     * doors and gates join rooms. Blocks open to the sky are counted as openings
+     * and not filled past. This is safe to run off the main thread.
+     */
+    private static Room flood(int x, int y, int z, ChunkSection[][] sections, int[][] heights, int budget) {
+        int baseX = ((x >> 4) - chunkRadius) << 4;
+        int baseZ = ((z >> 4) - chunkRadius) << 4;
+        BitSet seen = new BitSet(size * size * 256);
+        int[] queue = new int[budget];
+        long[] boundary = new long[64];
+        int boundaryCount = 0, openings = 0, head = 0, tail = 0;
+        boolean complete = true;
+
+        int start = index(x - baseX, y, z - baseZ);
+        seen.set(start);
+        queue[tail++] = start;
+
+        while (head < tail) {
+            int i = queue[head++];
+            int lx = i % size, lz = (i / size) % size, ly = i / (size * size);
+            for (int face = 0; face < 6; face++) {
+                int nx = lx + (face == 0 ? 1 : face == 1 ? -1 : 0);
+                int ny = ly + (face == 2 ? 1 : face == 3 ? -1 : 0);
+                int nz = lz + (face == 4 ? 1 : face == 5 ? -1 : 0);
+                if (ny < 0) continue;
+                if (ny >= 256) {
+                    openings++;
+                    continue;
+                }
+                if (nx < 0 || nz < 0 || nx >= size || nz >= size) {
+                    complete = false;
+                    continue;
+                }
+                int n = index(nx, ny, nz);
+                if (seen.get(n)) continue;
+                seen.set(n);
+
+                int chunk = (nz >> 4) * grid + (nx >> 4);
+                ChunkSection[] column = sections[chunk];
+                ChunkSection section = column == null ? null : column[ny >> 4];
+                if (section == null) {
+                    complete = false;
+                    continue;
+                }
+                boolean wall = !section.isHeatPassable(nx & 0xF, ny & 0xF, nz & 0xF);
+                boolean sky = !wall && ny >= heights[chunk][(nz & 0xF) << 4 | (nx & 0xF)];
+                if (wall || sky) {
+                    if (sky) openings++;
+                    if (boundaryCount == boundary.length) boundary = Arrays.copyOf(boundary, boundaryCount * 2);
+                    boundary[boundaryCount++] = Room.pack(baseX + nx, ny, baseZ + nz);
+                    continue;
+                }
+                if (tail == budget) {
+                    complete = false;
+                    continue;
+                }
+                queue[tail++] = n;
+            }
+        }
+
+        long[] cells = new long[tail];
+        int[] bounds = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+                Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+        for (int c = 0; c < tail; c++) {
+            int i = queue[c];
+            int bx = baseX + i % size, by = i / (size * size), bz = baseZ + (i / size) % size;
+            cells[c] = Room.pack(bx, by, bz);
+            bounds[0] = Math.min(bounds[0], bx - 1);
+            bounds[1] = Math.min(bounds[1], by - 1);
+            bounds[2] = Math.min(bounds[2], bz - 1);
+            bounds[3] = Math.max(bounds[3], bx + 1);
+            bounds[4] = Math.max(bounds[4], by + 1);
+            bounds[5] = Math.max(bounds[5], bz + 1);
+        }
+        boundary = Arrays.copyOf(boundary, boundaryCount);
+        Arrays.sort(cells);
+        Arrays.sort(boundary);
+        return new Room(cells, boundary, openings, complete, bounds, System.currentTimeMillis());
+    }
+
+    private static int index(int x, int y, int z) {
+        return (y * size + z) * size + x;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.world;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Caches temperature samples for a world in 2x2x2 block cells. Players standing
+ * close to each other can reuse the same sample instead of each scanning the same
+ * area. Samples are only valid for a short time before they have to be taken again.
+ */
+public class SampleCache {
+
+    private final Map<Long, Sample> samples = new HashMap<>();
+    private long lastPurge;
+
+    /**
+     * Returns the block emission sampled in the cell of a position.
+     *
+     * @param x   x block position.
+     * @param y   y block position.
+     * @param z   z block position.
+     * @param now current time in milliseconds.
+     * @param ttl how long a sample is valid for in milliseconds.
+     * @return the block emission or NaN if there is no valid sample.
+     */
+    public double getBlockEmission(int x, int y, int z, long now, long ttl) {
+        Sample sample = samples.get(key(x, y, z));
+        if (sample == null || now - sample.blockTime > ttl) return Double.NaN;
+        return sample.blockEmission;
+    }
+
+    /**
+     * Returns the ambient temperature sampled in the cell of a position.
+     *
+     * @param x   x block position.
+     * @param y   y block position.
+     * @param z   z block position.
+     * @param now current time in milliseconds.
+     * @param ttl how long a sample is valid for in milliseconds.
+     * @return the ambient temperature or NaN if there is no valid sample.
+     */
+    public double getAmbient(int x, int y, int z, long now, long ttl) {
+        Sample sample = samples.get(key(x, y, z));
+        if (sample == null || now - sample.ambientTime > ttl) return Double.NaN;
+        return sample.ambient;
+    }
+
+    /**
+     * Stores a block emission sample for the cell of a position.
+     *
+     * @param x     x block position.
+     * @param y     y block position.
+     * @param z     z block position.
+     * @param value block emission that was sampled.
+     * @param now   current time in milliseconds.
+     * @param ttl   how long a sample is valid for in milliseconds.
+     */
+    public void putBlockEmission(int x, int y, int z, double value, long now, long ttl) {
+        Sample sample = getOrCreate(x, y, z, now, ttl);
+        sample.blockEmission = value;
+        sample.blockTime = now;
+    }
+
+    /**
+     * Stores an ambient temperature sample for the cell of a position.
+     *
+     * @param x     x block position.
+     * @param y     y block position.
+     * @param z     z block position.
+     * @param value ambient temperature that was sampled.
+     * @param now   current time in milliseconds.
+     * @param ttl   how long a sample is valid for in milliseconds.
+     */
+    public void putAmbient(int x, int y, int z, double value, long now, long ttl) {
+        Sample sample = getOrCreate(x, y, z, now, ttl);
+        sample.ambient = value;
+        sample.ambientTime = now;
+    }
+
+    /**
+     * Removes the block emission sampled in the cell of a position. This is
+     * used when a block near the cell has changed.
+     *
+     * @param x x block position.
+     * @param y y block position.
+     * @param z z block position.
+     */
+    public void removeBlockEmission(int x, int y, int z) {
+        Sample sample = samples.get(key(x, y, z));
+        if (sample != null) sample.blockTime = Long.MIN_VALUE / 2;
+    }
+
+    /**
+     * @return how many cells currently have a sample.
+     */
+    public int size() {
+        return samples.size();
+    }
+
+    /**
+     * Removes all samples.
+     */
+    public void clear() {
+        samples.clear();
+    }
+
+    private Sample getOrCreate(int x, int y, int z, long now, long ttl) {
+        purge(now, ttl);
+        return samples.computeIfAbsent(key(x, y, z), k -> new Sample());
+    }
+
+    /**
+     * Removes any samples that have expired. This is only done every few
+     * lifetimes of a sample.
+     */
+    private void purge(long now, long ttl) {
+        if (now - lastPurge < ttl * 4) return;
+        lastPurge = now;
+        Iterator<Sample> it = samples.values().iterator();
+        while (it.hasNext()) {
+            Sample sample = it.next();
+            if (now - Math.max(sample.blockTime, sample.ambientTime) > ttl) {
+                it.remove();
+            }
+        }
+    }
+
+    private static long key(int x, int y, int z) {
+        long cx = (x >> 1) & 0x3FFFFFF;
+        long cz = (z >> 1) & 0x3FFFFFF;
+        long cy = (y >> 1) & 0xFFF;
+        return cx << 38 | cz << 12 | cy;
+    }
+
+    private static class Sample {
+        double blockEmission;
+        double ambient;
+        long blockTime = Long.MIN_VALUE / 2;
+        long ambientTime = Long.MIN_VALUE / 2;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.world;
+
+/**
+ * Scalar version of {@link EmissionKernel} that handles one emitter at a time.
+ * It is used on every version of Java and is the fallback when the vector
+ * version can't be used.
+ */
+final class ScalarEmissionKernel {
+
+    private ScalarEmissionKernel() {}
+
+    /**
+     * @see EmissionKernel#falloff(double[], double[], double[], double[], double[], double[], int)
+     */
+    static void falloff(double[] dx, double[] dy, double[] dz, double[] emission,
+                        double[] scalar, double[] out, int count) {
+        falloff(dx, dy, dz, emission, scalar, out, 0, count);
+    }
+
+    /**
+     * Calculates the falloff of the emitters from {@code from} up to {@code to}.
+     *
+     * @see EmissionKernel#falloff(double[], double[], double[], double[], double[], double[], int)
+     */
+    static void falloff(double[] dx, double[] dy, double[] dz, double[] emission,
+                        double[] scalar, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            double d2 = dx[i] * dx[i] + dy[i] * dy[i] + dz[i] * dz[i];
+            double factor = d2 == 0 ? 1 : Math.min(scalar[i] / d2, 1);
+            out[i] = emission[i] * factor;
+        }
+    }
+
+    /**
+     * @see EmissionKernel#sum(double[], int)
+     */
+    static double sum(double[] values, int count) {
+        return sum(values, 0, count);
+    }
+
+    /**
+     * @param values values to add.
+     * @param from   index of the first value to add.
+     * @param to     index after the last value to add.
+     * @return the sum of the values.
+     */
+    static double sum(double[] values, int from, int to) {
+        double total = 0;
+        for (int i = from; i < to; i++) {
+            total += values[i];
+        }
+        return total;
+    }
+}
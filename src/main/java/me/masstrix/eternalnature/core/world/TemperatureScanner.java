@@ -18,41 +18,63 @@ package me.masstrix.eternalnature.core.world;
 
 import me.masstrix.eternalnature.EternalNature;
 import me.masstrix.eternalnature.config.ConfigOption;
-import me.masstrix.eternalnature.core.temperature.BlockTemperature;
-import me.masstrix.eternalnature.core.temperature.TempModifierType;
-import me.masstrix.eternalnature.core.temperature.Temperatures;
+import me.masstrix.eternalnature.core.temperature.TemperatureSnapshot;
 import me.masstrix.eternalnature.data.PlayerIdle;
 import me.masstrix.eternalnature.data.UserData;
+import me.masstrix.eternalnature.util.MathUtil;
 import org.bukkit.Color;
-import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.Particle;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
-import org.bukkit.util.Vector;
+
+import java.util.Arrays;
 
 /**
  * Scans around a player to calculate the temperature of surrounding blocks.
  */
 public class TemperatureScanner {
 
+    private static final long driftCorrection = 5000;
+
     private int iteration;
     private int fidelity;
     private int area, height;
     private long lastScanTime;
     private boolean done;
-    private boolean setLoc;
     private final Player PLAYER;
     private final EternalNature PLUGIN;
-    private Temperatures tempData;
-    private Location loc;
+    private TemperatureSnapshot tempData;
+    private WorldData worldData;
     private UserData user;
     private double temperature;
-    private double hottest;
-    private double coldest;
     private double scannedTemp = 0;
-    private int tempTotalHeatCount = 0;
-    private int emissiveBlockCount = 0;
+    private EmissionScan pending;
+    private EmissionScan lastScan;
+    private final EmissionBuffer buffer = new EmissionBuffer();
+    private World lastScanWorld, pendingWorld;
+    private int lastScanRevision;
+    private double pendingDelta;
+    // Set when a block change could not be applied exactly and needs a new scan.
+    private boolean rescan;
+
+    // Window of blocks around the player used when the chunks have not been
+    // indexed. Blocks are stored wrapped around the window size so it can slide
+    // with the player without moving anything.
+    private Material[] windowTypes;
+    private double[] windowEmission;
+    private double[] windowFalloff;
+    private World windowWorld;
+    private int windowX, windowY, windowZ;
+    private int windowArea, windowHeight;
+    private int windowRevision;
+    private boolean windowSpherical;
+    // Offsets from the corner of the window of every block in the scanned area,
+    // packed as (y * area + z) * area + x. Spherical scans leave out the corners.
+    private int[] windowInside;
+    private int[] windowOrder;
+    private int windowCursor;
 
     Material cold, hot;
 
@@ -60,7 +82,7 @@ public class TemperatureScanner {
         this.PLUGIN = plugin;
         this.PLAYER = player;
         this.user = data;
-        this.tempData = plugin.getEngine().getDefaultTemperatures();
+        this.tempData = plugin.getEngine().getDefaultTemperatures().getSnapshot();
         setFidelity(4);
         setScanScale(2, 2);
     }
@@ -118,21 +140,28 @@ public class TemperatureScanner {
      */
     public void quickUpdate() {
         done = true;
-        this.loc = PLAYER.getLocation();
-        tick();
+        scan(false);
     }
 
     /**
-     * Ticks the region scanner around the players location. The scanner will update it's
-     * values once it's done enought iterations to match the fidelity.
+     * Ticks the region scanner around the players location. If the chunks around
+     * the player have been indexed the scan is done off the main thread and its
+     * result is applied on a later tick.
      */
     public void tick() {
+        scan(true);
+    }
+
+    /**
+     * Scans the area around the player.
+     *
+     * @param async should the scan be done off the main thread if possible.
+     */
+    private void scan(boolean async) {
         if (PLAYER == null || !PLAYER.isOnline()) return;
-        if (!setLoc) {
-            done = false;
-            setLoc = true;
-            this.loc = PLAYER.getLocation().clone();
-        }
+
+        // Wait for the last scan to be applied before starting another.
+        if (async && pending != null) return;
 
         PlayerIdle idleInfo = user.getPlayerIdleInfo();
 
@@ -140,128 +169,407 @@ public class TemperatureScanner {
         if (idleInfo.isAfk() && System.currentTimeMillis() - lastScanTime < 5000)
             return;
 
+        WorldData worldData = PLUGIN.getEngine().getWorldProvider().getWorld(PLAYER.getWorld());
+        this.worldData = worldData;
+        this.tempData = worldData.getTemperatures().getSnapshot();
+
         // Reduce the scan area while a player is in idle/afk.
         int area = idleInfo.isDeepIdle() ? (int) (this.area * 0.5) : this.area;
         int fidelity = idleInfo.isDeepIdle() ? this.fidelity + 2 : this.fidelity;
+        int dmgTemp = PLUGIN.getSystemConfig().getInt(ConfigOption.TEMPERATURE_DMG_AMOUNT);
+        boolean spherical = PLUGIN.getSystemConfig().isEnabled(ConfigOption.TEMPERATURE_SPHERICAL_SCAN);
+        boolean farField = PLUGIN.getSystemConfig().isEnabled(ConfigOption.TEMPERATURE_FAR_FIELD);
+
+        Block playerBlock = PLAYER.getLocation().getBlock();
+
+        // Block changes are applied to the temperature as they happen, so while the
+        // player stays on the same block a full scan is only needed now and then to
+        // correct anything the changes missed.
+        if (async && lastScan != null && lastScan.isIndexed()
+                && lastScanWorld == playerBlock.getWorld()
+                && lastScanRevision == tempData.getRevision()
+                && lastScan.getCenterX() == playerBlock.getX()
+                && lastScan.getCenterY() == playerBlock.getY()
+                && lastScan.getCenterZ() == playerBlock.getZ()
+                && !rescan
+                && System.currentTimeMillis() - lastScanTime < driftCorrection) {
+            share(worldData, lastScan);
+            return;
+        }
+        rescan = false;
 
-        // Updates scan area size and location if they are in motion.
-        if (user.isInMotion()) {
-            double velocity = user.getMotion().length();
-            area *= velocity > 0.8 ? 0.3 : velocity > 0.26 ? 0.5 : 0.7;
-            this.loc = PLAYER.getLocation().clone();
+        // A scan still running off the main thread is using the buffer.
+        EmissionScan scan = new EmissionScan(worldData, playerBlock.getWorld(),
+                playerBlock.getX(), playerBlock.getY(), playerBlock.getZ(),
+                area, this.height, dmgTemp, spherical, farField,
+                pending == null ? buffer : new EmissionBuffer());
+
+        // Draws the scan area around the player when
+        // debug mode is enabled.
+        if (user.isDebugEnabled()) {
+            drawScanArea(playerBlock, area / 2, this.height / 2);
         }
 
-        // center the scan area
-        int areaHalf = area / 2;
-        int heightHalf = this.height / 2;
+        // Only loop over the indexed emitters if the chunks around the
+        // player have been indexed. This is a full scan done in one go.
+        if (scan.isIndexed()) {
+            if (async) {
+                World world = playerBlock.getWorld();
+                int revision = tempData.getRevision();
+                pending = scan;
+                pendingWorld = world;
+                pendingDelta = 0;
+                PLUGIN.getEngine().getUserWorker().submit(scan, () -> apply(scan, worldData, world, revision));
+            } else {
+                scan.run();
+                apply(scan, worldData, playerBlock.getWorld(), tempData.getRevision());
+            }
+            return;
+        }
 
-        Block center = loc.getBlock();
+        // Otherwise scan a window of blocks around the player. As the player
+        // moves only the blocks entering the window are read from the world.
+        scanWindow(scan, playerBlock, area, fidelity);
+        scan.finish();
+        apply(scan, worldData, playerBlock.getWorld(), tempData.getRevision());
+    }
 
-        int areaSq = area * area; // squared area
-        int areaCb = areaSq * this.height; // cubed area
-        int scanSize = (areaCb / fidelity) + 1;
+    /**
+     * Scans a window of blocks around the center. When the center moves the window
+     * slides with it, reading only the slabs of blocks that entered the window. While
+     * the center is not moving a part of the window is read again each tick, set by
+     * the fidelity, so changes inside of it are picked up.
+     *
+     * @param scan     scan to add the emitting blocks to.
+     * @param center   block to center the scan on.
+     * @param area     x z area to scan in.
+     * @param fidelity how many ticks it takes to refresh the whole window.
+     */
+    private void scanWindow(EmissionScan scan, Block center, int area, int fidelity) {
+        World world = center.getWorld();
+        int height = this.height;
+        boolean spherical = PLUGIN.getSystemConfig().isEnabled(ConfigOption.TEMPERATURE_SPHERICAL_SCAN);
+        int minX = center.getX() - area / 2;
+        int minY = center.getY() - height / 2;
+        int minZ = center.getZ() - area / 2;
+        int shiftX = minX - windowX;
+        int shiftY = minY - windowY;
+        int shiftZ = minZ - windowZ;
+
+        if (windowTypes == null || windowWorld != world || windowArea != area
+                || windowHeight != height || windowSpherical != spherical
+                || windowRevision != tempData.getRevision()
+                || Math.abs(shiftX) >= area || Math.abs(shiftY) >= height
+                || Math.abs(shiftZ) >= area) {
+            int volume = area * area * height;
+            if (windowTypes == null || windowTypes.length != volume) {
+                windowTypes = new Material[volume];
+                windowEmission = new double[volume];
+                windowFalloff = new double[volume];
+            }
+            if (windowInside == null || windowArea != area || windowHeight != height
+                    || windowSpherical != spherical) {
+                windowInside = insideOffsets(area, height, spherical);
+                windowOrder = spreadOrder(windowInside);
+                windowCursor = 0;
+            }
+            windowWorld = world;
+            windowArea = area;
+            windowHeight = height;
+            windowSpherical = spherical;
+            windowRevision = tempData.getRevision();
+            windowX = minX;
+            windowY = minY;
+            windowZ = minZ;
+            for (int offset : windowInside) {
+                readOffset(world, offset);
+            }
+        } else if (spherical && (shiftX != 0 || shiftY != 0 || shiftZ != 0)) {
+            // Read the blocks that moved into the scanned area. Blocks in the
+            // corners of the box are never read.
+            windowX = minX;
+            windowY = minY;
+            windowZ = minZ;
+            for (int offset : windowInside) {
+                int ox = offset % area, oz = (offset / area) % area, oy = offset / (area * area);
+                if (!isInside(ox + shiftX, oy + shiftY, oz + shiftZ, area, height, true)) {
+                    readBlock(world, minX + ox, minY + oy, minZ + oz);
+                }
+            }
+        } else if (shiftX != 0 || shiftY != 0 || shiftZ != 0) {
+            // Slide one axis at a time, reading the slab that entered the window.
+            if (shiftX != 0) {
+                windowX = minX;
+                int from = shiftX > 0 ? minX + area - shiftX : minX;
+                readWindow(world, from, windowY, windowZ, Math.abs(shiftX), height, area);
+            }
+            if (shiftY != 0) {
+                windowY = minY;
+                int from = shiftY > 0 ? minY + height - shiftY : minY;
+                readWindow(world, windowX, from, windowZ, area, Math.abs(shiftY), area);
+            }
+            if (shiftZ != 0) {
+                windowZ = minZ;
+                int from = shiftZ > 0 ? minZ + area - shiftZ : minZ;
+                readWindow(world, windowX, windowY, from, area, height, Math.abs(shiftZ));
+            }
+        } else if (PLUGIN.getSystemConfig().isEnabled(ConfigOption.TEMPERATURE_SPREAD_SAMPLING)) {
+            // Refresh the same number of blocks but in an order spread across the
+            // whole window.
+            int count = (windowOrder.length + fidelity - 1) / fidelity;
+            for (int n = 0; n < count; n++) {
+                readOffset(world, windowOrder[windowCursor]);
+                windowCursor = (windowCursor + 1) % windowOrder.length;
+            }
+        } else {
+            for (int n = iteration % fidelity; n < windowInside.length; n += fidelity) {
+                readOffset(world, windowInside[n]);
+            }
+            iteration = (iteration + 1) % fidelity;
+        }
 
-        int dmgTemp = PLUGIN.getSystemConfig().getInt(ConfigOption.TEMPERATURE_DMG_AMOUNT);
+        for (int offset : windowInside) {
+            int x = windowX + offset % area;
+            int y = windowY + offset / (area * area);
+            int z = windowZ + (offset / area) % area;
+            int i = windowIndex(x, y, z);
+            if (windowEmission[i] == 0) continue;
+            scan.emit(x, y, z, windowTypes[i], windowEmission[i], windowFalloff[i]);
+        }
+    }
 
-        for (int j = 0; j < scanSize; j++) {
-            int i = j * fidelity + iteration;
-            int sq = i % areaSq; // 2d squared area
-            int x = sq % area - areaHalf;
-            int z = sq / area - areaHalf;
-            int y = (int) Math.floor((double) i / areaSq) - heightHalf; //i % areaSq; // depth
-
-            Block block = center.getRelative(x, y, z);
-
-            // Calculate block emission temperature
-            BlockTemperature blockTemp = (BlockTemperature) tempData.getModifier(
-                    block.getType(), TempModifierType.BLOCK);
-            if (blockTemp == null) continue;
-            double temp = blockTemp.getEmission();
-
-            // Ignore non emissive blocks
-            if (temp == 0) continue;
-
-            double distance = block.getLocation().distance(center.getLocation());
-            double scalar = blockTemp.getScalar();
-            double fallOff = distance == 0 ? temp : temp * Math.min(scalar / (distance * distance), 1);
-
-            // Check if here should be block dissipation.
-            if (fallOff > hottest && fallOff > dmgTemp) {
-                double vx = center.getX() - block.getX();
-                double vy = center.getY() - block.getY();
-                double vz = center.getZ() - block.getZ();
-                Vector direction = new Vector(vx, vy, vz).normalize();
-                Location rayLoc = block.getLocation().clone();
-
-                // Start ray trace. For every solid block the ray has
-                // to go through, there is a 50% reduction in temperature
-                // emission from the block.
-                for (int ray = 0; ray < distance; ray++) {
-                    rayLoc.add(direction);
-                    if (!rayLoc.getBlock().isPassable()) {
-                        fallOff *= 0.5;
+    /**
+     * Lists the offset of every block in a window that is inside of the scanned
+     * area, in order.
+     *
+     * @param area      x z size of the window.
+     * @param height    y size of the window.
+     * @param spherical should only blocks inside of a sphere fitting the window be included.
+     * @return the offsets packed as {@code (y * area + z) * area + x}.
+     */
+    private static int[] insideOffsets(int area, int height, boolean spherical) {
+        int[] offsets = new int[area * area * height];
+        int count = 0;
+        for (int y = 0; y < height; y++) {
+            for (int z = 0; z < area; z++) {
+                for (int x = 0; x < area; x++) {
+                    if (isInside(x, y, z, area, height, spherical)) {
+                        offsets[count++] = (y * area + z) * area + x;
                     }
                 }
             }
+        }
+        return Arrays.copyOf(offsets, count);
+    }
 
-            // Update temperature averaging.
-            if (fallOff != 0) {
-                emissiveBlockCount++;
-                scannedTemp += fallOff;
-            }
+    /**
+     * Returns if an offset from the corner of a window is inside of the area
+     * scanned. This matches {@link EmissionScan#contains(int, int, int)} for a
+     * scan centered in the window.
+     */
+    private static boolean isInside(int x, int y, int z, int area, int height, boolean spherical) {
+        if (x < 0 || y < 0 || z < 0 || x >= area || y >= height || z >= area) return false;
+        if (!spherical) return true;
+        double dx = (x - area / 2) / (area / 2D);
+        double dy = (y - height / 2) / (height / 2D);
+        double dz = (z - area / 2) / (area / 2D);
+        return dx * dx + dy * dy + dz * dz <= 1;
+    }
 
-            // Apply temperatures to hot and cold values
-            if (i == 0) {
-                hottest = fallOff;
-                coldest = fallOff;
-            } else if (fallOff > hottest) {
-                hottest = fallOff;
-                hot = block.getType();
-            } else if (fallOff < coldest) {
-                coldest = fallOff;
-                cold = block.getType();
-            }
+    /**
+     * Creates an order to visit every block in a window in. Stepping through the
+     * blocks by the golden ratio of their count means any run of steps is spread
+     * evenly over the window instead of covering one part of it.
+     *
+     * @param offsets offsets of the blocks in the window.
+     * @return the offsets in the order to visit them.
+     */
+    private static int[] spreadOrder(int[] offsets) {
+        int count = offsets.length;
+        int[] order = new int[count];
+        if (count == 0) return order;
+        int step = Math.max(1, (int) Math.round(count * 0.6180339887498949));
+        while (MathUtil.gcd(step, count) != 1) step++;
+        for (int n = 0, i = 0; n < count; n++, i = (i + step) % count) {
+            order[n] = offsets[i];
         }
+        return order;
+    }
 
-        // Draws the scan area around the player when
-        // debug mode is enabled.
-        if (user.isDebugEnabled()) {
-            double density = 0.5;
-
-            double minX = center.getX() + -areaHalf;
-            double minY = center.getY() + -heightHalf;
-            double minZ = center.getZ() + -areaHalf;
-            double maxX = center.getX() + areaHalf;
-            double maxY = center.getY() + heightHalf;
-            double maxZ = center.getZ() + areaHalf;
-
-            for (double x = minX; x <= maxX; x += density) {
-                for (double y = minY; y <= maxY; y += density) {
-                    for (double z = minZ; z <= maxZ; z += density) {
-                        int components = 0;
-                        if (x == minX || x == maxX) components++;
-                        if (y == minY || y == maxY) components++;
-                        if (z == minZ || z == maxZ) components++;
-                        if (components >= 2) {
-
-                            PLAYER.spawnParticle(Particle.REDSTONE,
-                                    x + 0.5,
-                                    y + 0.5,
-                                    z + 0.5,
-                                    1, 0, 0, 0, 1,
-                                    new Particle.DustOptions(Color.fromRGB(
-                                            0, 255, 255), 1));
-                        }
-                    }
+    /**
+     * Reads a box of blocks from the world into the scan window.
+     */
+    private void readWindow(World world, int fromX, int fromY, int fromZ, int sizeX, int sizeY, int sizeZ) {
+        for (int y = fromY; y < fromY + sizeY; y++) {
+            for (int z = fromZ; z < fromZ + sizeZ; z++) {
+                for (int x = fromX; x < fromX + sizeX; x++) {
+                    readBlock(world, x, y, z);
                 }
             }
         }
+    }
 
-        iteration++;
+    /**
+     * Reads the block at an offset from the corner of the window.
+     */
+    private void readOffset(World world, int offset) {
+        readBlock(world, windowX + offset % windowArea,
+                windowY + offset / (windowArea * windowArea),
+                windowZ + (offset / windowArea) % windowArea);
+    }
 
-        // recalculate the temperature.
-        if (done || iteration >= fidelity) {
-            done();
+    /**
+     * Reads a single block from the world into the scan window.
+     */
+    private void readBlock(World world, int x, int y, int z) {
+        int i = windowIndex(x, y, z);
+        if (y < 0 || y > 255) {
+            windowTypes[i] = null;
+            windowEmission[i] = 0;
+            return;
+        }
+        Block block = world.getBlockAt(x, y, z);
+        int state = tempData.getStateId(block);
+        windowTypes[i] = tempData.getStateMaterial(state);
+        windowEmission[i] = tempData.getBlockEmission(state);
+        windowFalloff[i] = tempData.getBlockFalloff(state);
+    }
+
+    /**
+     * @return the index in the window a block is stored at. Blocks are wrapped
+     *         around the window size so they keep their index as it slides.
+     */
+    private int windowIndex(int x, int y, int z) {
+        return (Math.floorMod(y, windowHeight) * windowArea + Math.floorMod(z, windowArea))
+                * windowArea + Math.floorMod(x, windowArea);
+    }
+
+    /**
+     * Applies the result of a scan.
+     *
+     * @param scan      scan to apply.
+     * @param worldData world data the scan was done in.
+     * @param world     world the scan was done in.
+     * @param revision  revision of the temperature data the scan used.
+     */
+    private void apply(EmissionScan scan, WorldData worldData, World world, int revision) {
+        double delta = 0;
+        if (scan == pending) {
+            pending = null;
+            delta = pendingDelta;
+            pendingDelta = 0;
+        }
+        if (!scan.isComplete()) return;
+        lastScan = scan;
+        lastScanWorld = world;
+        lastScanRevision = revision;
+        scannedTemp = scan.getTotal() + delta;
+        hot = scan.getHot();
+        cold = scan.getCold();
+        done();
+        share(worldData, scan);
+    }
+
+    /**
+     * Shares the scanned temperature with players close by through the sample
+     * cache of the world. This is only done once a scan has been applied, or
+     * while the last scan is still up to date, so a value from before the scan
+     * is never cached.
+     *
+     * @param worldData world data the scan was done in.
+     * @param scan      scan the temperature came from.
+     */
+    private void share(WorldData worldData, EmissionScan scan) {
+        // Changes that could not be applied exactly are corrected by the next scan.
+        if (rescan) return;
+        long ttl = PLUGIN.getSystemConfig().getInt(ConfigOption.TEMPERATURE_SAMPLE_TTL);
+        worldData.getSampleCache().putBlockEmission(scan.getCenterX(), scan.getCenterY(), scan.getCenterZ(),
+                temperature, System.currentTimeMillis(), ttl);
+    }
+
+    /**
+     * Applies the change in emission of a block to the scanned temperature
+     * straight away instead of waiting for the next scan. Scans still waiting
+     * to be applied will have the change added once they are.
+     * <p>
+     * Emitters hot enough to be traced for blocks in the way, and blocks that
+     * could be in the way of them, can't be known exactly from the change alone
+     * so a new scan is done on the next update to correct them.
+     *
+     * @param world       world the block is in.
+     * @param x           x position of the block.
+     * @param y           y position of the block.
+     * @param z           z position of the block.
+     * @param oldEmission emission of the block before it changed.
+     * @param oldFalloff  falloff scalar of the block before it changed.
+     * @param newEmission emission of the block after it changed.
+     * @param newFalloff  falloff scalar of the block after it changed.
+     * @param passable    if the block changed between passable and solid.
+     * @return the scan the change was applied to or null if the block
+     *         is not in the scanned area.
+     */
+    public EmissionScan applyBlockChange(World world, int x, int y, int z,
+                                         double oldEmission, double oldFalloff,
+                                         double newEmission, double newFalloff,
+                                         boolean passable) {
+        // Scans that are running captured the sections before this change and
+        // have not traced anything yet, so only untraced changes can be added.
+        if (pending != null && world == pendingWorld && pending.contains(x, y, z)) {
+            double oldValue = pending.getFallOff(x, y, z, oldEmission, oldFalloff);
+            double newValue = pending.getFallOff(x, y, z, newEmission, newFalloff);
+            if (passable || pending.isTraced(oldValue) || pending.isTraced(newValue)) {
+                rescan = true;
+            } else {
+                pendingDelta += newValue - oldValue;
+            }
+        }
+
+        EmissionScan scan = lastScan;
+        if (scan == null || world != lastScanWorld || !scan.contains(x, y, z)) return null;
+        temperature += scan.getChange(x, y, z, oldEmission, oldFalloff, newEmission, newFalloff);
+        if ((passable && scan.isOnTracedRay(x, y, z))
+                || scan.isTraced(scan.getFallOff(x, y, z, newEmission, newFalloff))) {
+            rescan = true;
+        }
+        return scan;
+    }
+
+    /**
+     * Draws the scan area around the player.
+     *
+     * @param center     center of the scan area.
+     * @param areaHalf   half of the x z scan area.
+     * @param heightHalf half of the scan height.
+     */
+    private void drawScanArea(Block center, int areaHalf, int heightHalf) {
+        double density = 0.5;
+
+        double minX = center.getX() + -areaHalf;
+        double minY = center.getY() + -heightHalf;
+        double minZ = center.getZ() + -areaHalf;
+        double maxX = center.getX() + areaHalf;
+        double maxY = center.getY() + heightHalf;
+        double maxZ = center.getZ() + areaHalf;
+
+        for (double x = minX; x <= maxX; x += density) {
+            for (double y = minY; y <= maxY; y += density) {
+                for (double z = minZ; z <= maxZ; z += density) {
+                    int components = 0;
+                    if (x == minX || x == maxX) components++;
+                    if (y == minY || y == maxY) components++;
+                    if (z == minZ || z == maxZ) components++;
+                    if (components >= 2) {
+
+                        PLAYER.spawnParticle(Particle.REDSTONE,
+                                x + 0.5,
+                                y + 0.5,
+                                z + 0.5,
+                                1, 0, 0, 0, 1,
+                                new Particle.DustOptions(Color.fromRGB(
+                                        0, 255, 255), 1));
+                    }
+                }
+            }
         }
     }
 
@@ -273,11 +581,7 @@ public class TemperatureScanner {
 
         // Resets values
         lastScanTime = System.currentTimeMillis();
-        iteration = 0;
         scannedTemp = 0;
-        emissiveBlockCount = 0;
-        tempTotalHeatCount = 0;
         done = true;
-        setLoc = false;
     }
 }
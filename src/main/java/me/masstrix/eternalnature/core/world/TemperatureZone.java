@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.world;
+
+/**
+ * A box of blocks in a world that changes the temperature of players inside of it.
+ * A zone can add an offset to the temperature and can replace the climate, which
+ * is the temperature from blocks, biomes and the environment, with a fixed value.
+ * If a player is in more than one zone all the offsets are added and the fixed
+ * climate of the zone with the highest priority is used.
+ */
+public class TemperatureZone {
+
+    private final String name;
+    private final int minX, minY, minZ;
+    private final int maxX, maxY, maxZ;
+    private double offset;
+    private double climate = Double.NaN;
+    private int priority;
+
+    /**
+     * Creates a zone between two corners. Both corners are inside of the zone.
+     *
+     * @param name name of the zone.
+     * @param x1   x position of the first corner.
+     * @param y1   y position of the first corner.
+     * @param z1   z position of the first corner.
+     * @param x2   x position of the second corner.
+     * @param y2   y position of the second corner.
+     * @param z2   z position of the second corner.
+     */
+    public TemperatureZone(String name, int x1, int y1, int z1, int x2, int y2, int z2) {
+        this.name = name;
+        this.minX = Math.min(x1, x2);
+        this.minY = Math.min(y1, y2);
+        this.minZ = Math.min(z1, z2);
+        this.maxX = Math.max(x1, x2);
+        this.maxY = Math.max(y1, y2);
+        this.maxZ = Math.max(z1, z2);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMinZ() {
+        return minZ;
+    }
+
+    public int getMaxX() {
+        return maxX;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+
+    public int getMaxZ() {
+        return maxZ;
+    }
+
+    /**
+     * @param x x block position.
+     * @param y y block position.
+     * @param z z block position.
+     * @return if the block is inside of the zone.
+     */
+    public boolean contains(int x, int y, int z) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+    }
+
+    /**
+     * @return how much is added to the temperature of players in the zone.
+     */
+    public double getOffset() {
+        return offset;
+    }
+
+    public void setOffset(double offset) {
+        this.offset = offset;
+    }
+
+    /**
+     * @return if the zone replaces the climate with a fixed value.
+     */
+    public boolean hasClimate() {
+        return !Double.isNaN(climate);
+    }
+
+    /**
+     * @return the fixed climate of the zone or NaN if it has none.
+     */
+    public double getClimate() {
+        return climate;
+    }
+
+    /**
+     * @param climate fixed climate of the zone or NaN to use the normal climate.
+     */
+    public void setClimate(double climate) {
+        this.climate = climate;
+    }
+
+    /**
+     * @return the priority of the zones climate over other zones.
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.world;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * The temperature zones of a world. Zones are saved in the worlds folder and
+ * kept in a {@link ZoneIndex} so finding the zones at a point stays cheap with
+ * thousands of zones. The index is built again whenever a zone is added or
+ * removed.
+ */
+public class TemperatureZones {
+
+    private final File file;
+    private final Map<String, TemperatureZone> zones = new LinkedHashMap<>();
+    private volatile ZoneIndex index = ZoneIndex.EMPTY;
+
+    /**
+     * @param file file the zones are saved in.
+     */
+    public TemperatureZones(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads all the zones from the file replacing any that are loaded.
+     */
+    public void load() {
+        zones.clear();
+        if (file.exists()) {
+            YamlConfiguration config = new YamlConfiguration();
+            try {
+                config.load(file);
+            } catch (IOException | InvalidConfigurationException e) {
+                e.printStackTrace();
+            }
+
+            ConfigurationSection sec = config.getConfigurationSection("zones");
+            if (sec != null) {
+                for (String key : sec.getKeys(false)) {
+                    List<Integer> b = sec.getIntegerList(key + ".bounds");
+                    if (b.size() != 6) continue;
+                    TemperatureZone zone = new TemperatureZone(key,
+                            b.get(0), b.get(1), b.get(2), b.get(3), b.get(4), b.get(5));
+                    zone.setOffset(sec.getDouble(key + ".offset", 0));
+                    zone.setClimate(sec.contains(key + ".climate")
+                            ? sec.getDouble(key + ".climate") : Double.NaN);
+                    zone.setPriority(sec.getInt(key + ".priority", 0));
+                    zones.put(key.toLowerCase(), zone);
+                }
+            }
+        }
+        index = new ZoneIndex(zones.values());
+    }
+
+    /**
+     * Saves all the zones to the file.
+     */
+    public void save() {
+        YamlConfiguration config = new YamlConfiguration();
+        for (TemperatureZone zone : zones.values()) {
+            String key = "zones." + zone.getName();
+            config.set(key + ".bounds", Arrays.asList(zone.getMinX(), zone.getMinY(), zone.getMinZ(),
+                    zone.getMaxX(), zone.getMaxY(), zone.getMaxZ()));
+            config.set(key + ".offset", zone.getOffset());
+            if (zone.hasClimate()) config.set(key + ".climate", zone.getClimate());
+            config.set(key + ".priority", zone.getPriority());
+        }
+        try {
+            file.getParentFile().mkdirs();
+            config.save(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Adds a zone and saves the zones.
+     *
+     * @param zone zone to add.
+     * @return false if there is already a zone with the same name.
+     */
+    public boolean add(TemperatureZone zone) {
+        if (zones.putIfAbsent(zone.getName().toLowerCase(), zone) != null) return false;
+        index = new ZoneIndex(zones.values());
+        save();
+        return true;
+    }
+
+    /**
+     * Removes a zone and saves the zones.
+     *
+     * @param name name of the zone.
+     * @return the removed zone or null if there was no zone with that name.
+     */
+    public TemperatureZone remove(String name) {
+        TemperatureZone zone = zones.remove(name.toLowerCase());
+        if (zone == null) return null;
+        index = new ZoneIndex(zones.values());
+        save();
+        return zone;
+    }
+
+    /**
+     * @param name name of the zone.
+     * @return the zone or null if there is no zone with that name.
+     */
+    public TemperatureZone get(String name) {
+        return zones.get(name.toLowerCase());
+    }
+
+    /**
+     * @return all the zones in the world.
+     */
+    public Collection<TemperatureZone> getZones() {
+        return Collections.unmodifiableCollection(zones.values());
+    }
+
+    /**
+     * Adds every zone that contains a block to a sample. The sample is not reset
+     * first.
+     *
+     * @param x      x block position.
+     * @param y      y block position.
+     * @param z      z block position.
+     * @param sample sample to add the zones to.
+     */
+    public void sample(int x, int y, int z, ZoneSample sample) {
+        index.query(x, y, z, sample);
+    }
+
+    /**
+     * @return how many zones there are.
+     */
+    public int size() {
+        return index.size();
+    }
+}
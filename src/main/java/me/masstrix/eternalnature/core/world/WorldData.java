@@ -18,12 +18,19 @@ package me.masstrix.eternalnature.core.world;
 
 import me.masstrix.eternalnature.EternalNature;
 import me.masstrix.eternalnature.api.EternalWorld;
+import me.masstrix.eternalnature.config.ConfigOption;
+import me.masstrix.eternalnature.config.SystemConfig;
 import me.masstrix.eternalnature.config.Reloadable;
+import me.masstrix.eternalnature.core.temperature.TemperatureSnapshot;
 import me.masstrix.eternalnature.core.temperature.Temperatures;
+import me.masstrix.eternalnature.data.UserData;
 import me.masstrix.eternalnature.util.*;
 import org.bukkit.*;
 import org.bukkit.block.Biome;
 import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Waterlogged;
+import org.bukkit.entity.Player;
 import org.bukkit.scheduler.BukkitRunnable;
 
 import java.io.*;
@@ -32,16 +39,34 @@ import java.util.concurrent.ConcurrentHashMap;
 
 public class WorldData implements EternalWorld, Reloadable {
 
+    private static final int refreshRadius = 2;
+    private static final int refreshBudget = 2;
+    // Most water blocks above a block that are looked for when getting its depth.
+    static final int maxWaterDepth = 30;
+
     private Map<Long, ChunkData> chunks = new HashMap<>();
     private String worldName;
     protected EternalNature plugin;
     private Temperatures temperatures;
+    private final SampleCache samples = new SampleCache();
+    private final HeatField heatField = new HeatField(this);
+    private final RegionCache regionCache;
+    private final TemperatureZones zones;
+    private final RoomCache rooms = new RoomCache(this);
+    private final EntityGrid entities = new EntityGrid();
+    private final Location refreshLoc = new Location(null, 0, 0, 0);
+    private int[] ringKernel;
+    private int ringPoints = -1;
+    private int ringRadius = -1;
     Map<Position, WaterfallEmitter> waterfalls = new ConcurrentHashMap<>();
 
     public WorldData(EternalNature plugin, String world) {
         this.plugin = plugin;
         this.worldName = world;
+        this.regionCache = new RegionCache(new File(plugin.getDataFolder(), "worlds/" + world + "/cache"));
+        this.zones = new TemperatureZones(new File(plugin.getDataFolder(), "worlds/" + world + "/zones.yml"));
         loadConfig();
+        zones.load();
     }
 
     /**
@@ -91,6 +116,42 @@ public class WorldData implements EternalWorld, Reloadable {
 
     public void tick() {
         //chunks.forEach((l, c) -> c.tick());
+        World world = asBukkit();
+        if (world == null) return;
+
+        // The grid is only used for body heat near players.
+        SystemConfig config = plugin.getSystemConfig();
+        if (config.isEnabled(ConfigOption.TEMPERATURE_BODY_HEAT)
+                && config.getDouble(ConfigOption.TEMPERATURE_BODY_HEAT_RADIUS) > 0
+                && !world.getPlayers().isEmpty()) {
+            entities.refresh(world);
+        } else {
+            entities.clear();
+        }
+        refreshIndexes(world);
+    }
+
+    /**
+     * Indexes the chunks around players again once their index is old. Only a
+     * few chunks are done each time so the cost is spread out.
+     *
+     * @param world world to refresh chunks in.
+     */
+    private void refreshIndexes(World world) {
+        long interval = plugin.getSystemConfig().getInt(ConfigOption.TEMPERATURE_INDEX_REFRESH) * 1000L;
+        if (interval <= 0) return;
+        long now = System.currentTimeMillis();
+        int budget = refreshBudget;
+        for (Player player : world.getPlayers()) {
+            player.getLocation(refreshLoc);
+            int chunkX = refreshLoc.getBlockX() >> 4, chunkZ = refreshLoc.getBlockZ() >> 4;
+            for (int dx = -refreshRadius; dx <= refreshRadius; dx++) {
+                for (int dz = -refreshRadius; dz <= refreshRadius; dz++) {
+                    ChunkData chunk = chunks.get(pair(chunkX + dx, chunkZ + dz));
+                    if (chunk != null && chunk.refresh(now, interval) && --budget == 0) return;
+                }
+            }
+        }
     }
 
     public void render() {
@@ -99,11 +160,50 @@ public class WorldData implements EternalWorld, Reloadable {
 
     public void save() {
         temperatures.saveConfig();
+        World world = asBukkit();
+        for (ChunkData chunk : chunks.values()) {
+            if (world != null && world.isChunkLoaded(chunk.getX(), chunk.getZ())) {
+                chunk.save(world.getChunkAt(chunk.getX(), chunk.getZ()).getInhabitedTime());
+            }
+        }
+        regionCache.close();
+    }
+
+    /**
+     * @return the cache of indexed chunks on disk or null if it's disabled.
+     */
+    RegionCache getRegionCache() {
+        return plugin.getSystemConfig().isEnabled(ConfigOption.TEMPERATURE_DISK_CACHE) ? regionCache : null;
+    }
+
+    /**
+     * Writes any cached temperature data that has changed since it was last saved.
+     */
+    public void flush() {
+        temperatures.flush();
+    }
+
+    /**
+     * Steps the worlds heat field if the simulation is enabled.
+     */
+    public void stepHeat() {
+        SystemConfig config = plugin.getSystemConfig();
+        if (!config.isEnabled(ConfigOption.TEMPERATURE_SIMULATION)) {
+            if (heatField.size() > 0) heatField.clear();
+            return;
+        }
+        heatField.tick(config.getInt(ConfigOption.TEMPERATURE_SIMULATION_BUDGET),
+                (float) config.getDouble(ConfigOption.TEMPERATURE_SIMULATION_LOSS),
+                (float) config.getDouble(ConfigOption.TEMPERATURE_SIMULATION_SKY_LOSS));
     }
 
     @Override
     public void reload() {
         temperatures.loadData();
+        zones.load();
+        rooms.clear();
+        samples.clear();
+        heatField.clear();
     }
 
     public void createWaterfall(Location loc) {
@@ -126,6 +226,34 @@ public class WorldData implements EternalWorld, Reloadable {
         return temperatures;
     }
 
+    /**
+     * @return a spatial hash of the players and living entities in the world.
+     */
+    public EntityGrid getEntityGrid() {
+        return entities;
+    }
+
+    /**
+     * @return the temperature zones in the world.
+     */
+    public TemperatureZones getZones() {
+        return zones;
+    }
+
+    /**
+     * @return the simulated heat of the world.
+     */
+    public HeatField getHeatField() {
+        return heatField;
+    }
+
+    /**
+     * @return the shared temperature samples for this world.
+     */
+    public SampleCache getSampleCache() {
+        return samples;
+    }
+
     /**
      * Returns the biome temperature for a block.
      *
@@ -138,12 +266,51 @@ public class WorldData implements EternalWorld, Reloadable {
     public double getBiomeEmission(int x, int y, int z) {
         World world = asBukkit();
         if (world != null) {
-            Biome biome = world.getBlockAt(x, y, z).getBiome();
-            return temperatures.getBiome(biome, world);
+            TemperatureSnapshot temps = temperatures.getSnapshot();
+            return getBiomeEmission(world, temps, temps.getDayBucket(world), x, y, z);
         }
         return 0;
     }
 
+    /**
+     * Returns the biome temperature for a block. If the chunk is loaded its
+     * cached biome grid is used, otherwise the biome is looked up from the world.
+     */
+    private double getBiomeEmission(World world, TemperatureSnapshot temps, int bucket, int x, int y, int z) {
+        ChunkData chunk = chunks.get(pair(x >> 4, z >> 4));
+        if (chunk != null) {
+            double temp = chunk.getClimate(x & 0xF, z & 0xF, world, temps, bucket);
+            if (!Double.isNaN(temp)) return temp;
+        }
+        Biome biome = world.getBlockAt(x, y, z).getBiome();
+        return temps.getBiome(biome, world);
+    }
+
+    /**
+     * Returns the block offsets for a ring of sample points. Offsets are stored
+     * as x, z pairs and are only recalculated if the ring changes.
+     *
+     * @param points number of points in the ring.
+     * @param rad    radius of the ring.
+     * @return the x and z offsets of each point.
+     */
+    private int[] getRingKernel(int points, int rad) {
+        if (ringKernel != null && points == ringPoints && rad == ringRadius) {
+            return ringKernel;
+        }
+        int[] kernel = new int[points * 2];
+        double increment = (2 * Math.PI) / points;
+        for (int i = 0; i < points; i++) {
+            double angle = i * increment;
+            kernel[i * 2] = (int) Math.floor(rad * Math.cos(angle));
+            kernel[i * 2 + 1] = (int) Math.floor(rad * Math.sin(angle));
+        }
+        ringKernel = kernel;
+        ringPoints = points;
+        ringRadius = rad;
+        return kernel;
+    }
+
     /**
      * Scans around in a circle
      *
@@ -156,14 +323,15 @@ public class WorldData implements EternalWorld, Reloadable {
      *         location.
      */
     public double getAmbientTemperature(int points, int rad, int x, int y, int z) {
-        double total = getBiomeEmission(x, y, z);
-        double increment = (2 * Math.PI) / points;
+        World world = asBukkit();
+        if (world == null) return 0;
+        TemperatureSnapshot temps = temperatures.getSnapshot();
+        int bucket = temps.getDayBucket(world);
+        int[] kernel = getRingKernel(points, rad);
+        double total = getBiomeEmission(world, temps, bucket, x, y, z);
 
-        for (int i = 0; i < points; i++) {
-            double angle = i * increment;
-            int blockX = (int) (x + (rad * Math.cos(angle)));
-            int blockZ = (int) (z + (rad * Math.sin(angle)));
-            total += getBiomeEmission(blockX, y, blockZ);
+        for (int i = 0; i < kernel.length; i += 2) {
+            total += getBiomeEmission(world, temps, bucket, x + kernel[i], y, z + kernel[i + 1]);
         }
         return total / (points + 1);
     }
@@ -180,33 +348,224 @@ public class WorldData implements EternalWorld, Reloadable {
     public double getBlockAmbientTemperature(int x, int y, int z) {
         World world = asBukkit();
         if (world == null) return 0;
-        Block block = world.getBlockAt(x, y, z);
+        TemperatureSnapshot temps = temperatures.getSnapshot();
         double temp = getAmbientTemperature(5, 15, x, y, z);
 
-        // Apply modifier if block has sunlight.
-        if (block.getLightFromSky() > 0) {
-            double directSunAmplifier = temperatures.getDirectSunAmplifier() - 1;
-            byte skyLight = block.getLightFromSky();
-            double percent = skyLight / 15D;
+        // Use the cached light of the chunk if it's classified, otherwise
+        // look up the block itself.
+        int skyLight, light;
+        boolean caveAir;
+        double shelter = 0;
+        ChunkData chunk = chunks.get(pair(x >> 4, z >> 4));
+        ChunkSection section = chunk == null || y < 0 || y > 255 ? null : chunk.getSectionData(y >> 4);
+        if (section != null && section.isClassified()) {
+            if (chunk.isExposed(world, x & 0xF, y, z & 0xF)) {
+                skyLight = 15;
+                light = 15;
+                caveAir = false;
+            } else {
+                shelter = getShelter(x, y, z);
+                skyLight = section.getCoveredSkyLight(x & 0xF, y & 0xF, z & 0xF);
+                light = Math.max(skyLight, section.getCoveredBlockLight(x & 0xF, y & 0xF, z & 0xF));
+                caveAir = section.isCave(x & 0xF, y & 0xF, z & 0xF);
+            }
+        } else {
+            Block block = world.getBlockAt(x, y, z);
+            skyLight = block.getLightFromSky();
+            light = block.getLightLevel();
+            caveAir = block.getType() == Material.CAVE_AIR;
+        }
+
+        // Apply modifier if block has sunlight. Sheltered rooms keep out the sun
+        // even if light gets in through windows.
+        if (skyLight > 0) {
+            double directSunAmplifier = temps.getDirectSunAmplifier() - 1;
+            double percent = skyLight / 15D * (1 - shelter);
             temp *= directSunAmplifier * percent + 1;
         }
 
-        // Apply modifier if block is in a "cave"
-        if (((block.getLightFromSky() <= 6 && block.getLightLevel() < 6)
-                || block.getType() == Material.CAVE_AIR)
-                && block.getLightLevel() != 15) {
-            double amp = temperatures.getCaveModifier() - 1;
-            byte light = block.getLightLevel();
-            double percent = (15D - light) / 15D;
+        // Apply modifier if block is in a "cave". Sheltered rooms are treated
+        // as caves as much as they are sheltered.
+        if (((skyLight <= 6 && light < 6) || caveAir) && light != 15) {
+            double amp = temps.getCaveModifier() - 1;
+            double percent = Math.max((15D - light) / 15D, shelter);
             temp *= amp * percent + 1;
+        } else if (shelter > 0) {
+            temp *= (temps.getCaveModifier() - 1) * shelter + 1;
         }
         return temp;
     }
 
+    /**
+     * Returns how sheltered a block is by the room it's in. If the room is not
+     * known yet it is found in the background and the block has no shelter until
+     * then.
+     *
+     * @param x x block position.
+     * @param y y block position.
+     * @param z z block position.
+     * @return how sheltered the block is from 0 to 1.
+     */
+    private double getShelter(int x, int y, int z) {
+        SystemConfig config = plugin.getSystemConfig();
+        if (!config.isEnabled(ConfigOption.TEMPERATURE_ENCLOSURE)) return 0;
+        Room room = rooms.find(x, y, z, config.getInt(ConfigOption.TEMPERATURE_ENCLOSURE_BUDGET));
+        return room == null ? 0 : room.getShelter();
+    }
+
+    /**
+     * Returns the room a block is in if it has been found. Rooms are only found
+     * for blocks that players are in that are covered from the sky.
+     *
+     * @param x x block position.
+     * @param y y block position.
+     * @param z z block position.
+     * @return the room or null if no room is known for the block.
+     */
+    public Room getRoom(int x, int y, int z) {
+        for (Room room : rooms.getRooms()) {
+            if (room.contains(x, y, z)) return room;
+        }
+        return null;
+    }
+
     public boolean isChunkLoaded(int x, int z) {
         return chunks.containsKey(pair(x, z));
     }
 
+    /**
+     * Loads a chunks data and starts indexing it.
+     *
+     * @param chunk chunk that has been loaded.
+     */
+    public void loadChunk(Chunk chunk) {
+        long key = pair(chunk.getX(), chunk.getZ());
+        if (chunks.containsKey(key)) return;
+        ChunkData data = new ChunkData(this, chunk.getX(), chunk.getZ());
+        chunks.put(key, data);
+        data.index();
+    }
+
+    /**
+     * Unloads a chunks data.
+     *
+     * @param chunk chunk that has been unloaded.
+     */
+    public void unloadChunk(Chunk chunk) {
+        ChunkData data = chunks.remove(pair(chunk.getX(), chunk.getZ()));
+        if (data != null) data.save(chunk.getInhabitedTime());
+    }
+
+    /**
+     * @return every loaded chunk.
+     */
+    Collection<ChunkData> getChunks() {
+        return chunks.values();
+    }
+
+    /**
+     * @param x x chunk position.
+     * @param z z chunk position.
+     * @return the chunks data or null if the chunk is not loaded.
+     */
+    public ChunkData getChunk(int x, int z) {
+        return chunks.get(pair(x, z));
+    }
+
+    /**
+     * Returns how many water blocks are directly above a block, up to 30. The
+     * water in each column is cached by its chunk.
+     *
+     * @param block block to get the depth of. This should be water.
+     * @return how many water blocks are above the block.
+     */
+    public int getWaterDepth(Block block) {
+        ChunkData chunk = chunks.get(pair(block.getX() >> 4, block.getZ() >> 4));
+        if (chunk != null) return chunk.getWaterDepth(block);
+
+        int depth = 0;
+        while (depth < maxWaterDepth && block.getY() + depth < 255
+                && isWater(block.getRelative(0, depth + 1, 0))) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * @param block block to check.
+     * @return if the block is water or contains water.
+     */
+    public static boolean isWater(Block block) {
+        switch (block.getType()) {
+            case WATER:
+            case SEAGRASS:
+            case TALL_SEAGRASS:
+            case KELP_PLANT:
+                return true;
+        }
+        BlockData data = block.getBlockData();
+        return data instanceof Waterlogged && ((Waterlogged) data).isWaterlogged();
+    }
+
+    /**
+     * Updates a blocks type in the chunks temperature index. This should be
+     * called whenever a block changes in the world.
+     *
+     * @param block block that has changed.
+     * @param type  new type of the block.
+     */
+    public void updateBlock(Block block, Material type) {
+        updateBlock(block, type, temperatures.getSnapshot().getStateId(type), false);
+    }
+
+    /**
+     * Updates a block in the chunks temperature index using its current type and
+     * block state. This should be used when the block has already changed in the
+     * world.
+     *
+     * @param block block that has changed.
+     */
+    public void updateBlock(Block block) {
+        Material type = block.getType();
+        boolean open = ChunkSection.isOpenable(type) && ChunkSection.isOpen(block.getBlockData());
+        updateBlock(block, type, temperatures.getSnapshot().getStateId(block), open);
+    }
+
+    private void updateBlock(Block block, Material type, int state, boolean open) {
+        ChunkData chunk = chunks.get(pair(block.getX() >> 4, block.getZ() >> 4));
+        if (chunk == null) return;
+        int x = block.getX(), y = block.getY(), z = block.getZ();
+        if (y < 0 || y > 255) return;
+
+        rooms.invalidate(x, y, z);
+        ChunkSection before = chunk.getSectionData(y >> 4);
+        chunk.updateBlock(x & 0xF, y, z & 0xF, type, state, open);
+        ChunkSection after = chunk.getSectionData(y >> 4);
+        if (before == null || after == null || before == after) return;
+
+        // Let nearby scanners know straight away how the emission changed.
+        int i = before.getEmitterAt(x & 0xF, y & 0xF, z & 0xF);
+        int j = after.getEmitterAt(x & 0xF, y & 0xF, z & 0xF);
+        double oldEmission = i == -1 ? 0 : before.getEmission(i);
+        double oldFalloff = i == -1 ? 0 : before.getFalloff(i);
+        double newEmission = j == -1 ? 0 : after.getEmission(j);
+        double newFalloff = j == -1 ? 0 : after.getFalloff(j);
+        boolean passable = before.isPassable(x & 0xF, y & 0xF, z & 0xF)
+                != after.isPassable(x & 0xF, y & 0xF, z & 0xF);
+        if (oldEmission == newEmission && oldFalloff == newFalloff && !passable) return;
+
+        World world = block.getWorld();
+        for (UserData user : plugin.getEngine().getCashedUsers()) {
+            TemperatureScanner scanner = user.getTemperatureScanner();
+            if (scanner == null) continue;
+            EmissionScan scan = scanner.applyBlockChange(world, x, y, z,
+                    oldEmission, oldFalloff, newEmission, newFalloff, passable);
+            if (scan != null) {
+                samples.removeBlockEmission(scan.getCenterX(), scan.getCenterY(), scan.getCenterZ());
+            }
+        }
+    }
+
     public static long pair(int var0, int var1) {
         return (long) var0 & 4294967295L | ((long) var1 & 4294967295L) << 32;
     }
@@ -19,6 +19,8 @@ package me.masstrix.eternalnature.core.world;
 import me.masstrix.eternalnature.EternalNature;
 import me.masstrix.eternalnature.config.Reloadable;
 import me.masstrix.eternalnature.core.EternalWorker;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
 import org.bukkit.World;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.scheduler.BukkitTask;
@@ -29,13 +31,18 @@ import java.util.Map;
 
 public class WorldProvider implements EternalWorker, Reloadable {
 
+    private static final int FLUSH_DELAY = 6000;
+
     private EternalNature plugin;
     private Map<String, WorldData> worldData = new HashMap<>();
+    private final ClimatePrefetcher prefetcher;
     private BukkitTask ticker;
     private int tick = 0;
+    private int flushTick = 0;
 
     public WorldProvider(EternalNature plugin) {
         this.plugin = plugin;
+        this.prefetcher = new ClimatePrefetcher(plugin);
     }
 
     /**
@@ -70,6 +77,14 @@ public class WorldProvider implements EternalWorker, Reloadable {
 
     @Override
     public void start() {
+        // Load any chunks that were already loaded before starting.
+        for (World world : Bukkit.getWorlds()) {
+            WorldData data = getWorld(world);
+            for (Chunk chunk : world.getLoadedChunks()) {
+                data.loadChunk(chunk);
+            }
+        }
+
         ticker = new BukkitRunnable() {
             @Override
             public void run() {
@@ -78,6 +93,11 @@ public class WorldProvider implements EternalWorker, Reloadable {
                     worldData.forEach((n, w) -> w.tick());
                 }
                 worldData.forEach((n, w) -> w.render());
+                worldData.forEach((n, w) -> w.stepHeat());
+                if (++flushTick == FLUSH_DELAY) {
+                    flushTick = 0;
+                    worldData.forEach((n, w) -> w.flush());
+                }
             }
         }.runTaskTimer(plugin, 0, 1);
     }
@@ -93,6 +113,13 @@ public class WorldProvider implements EternalWorker, Reloadable {
         worldData.values().forEach(w -> reload());
     }
 
+    /**
+     * @return the prefetcher for chunks ahead of moving players.
+     */
+    public ClimatePrefetcher getPrefetcher() {
+        return prefetcher;
+    }
+
     /**
      * @return how many worlds are loaded.
      */
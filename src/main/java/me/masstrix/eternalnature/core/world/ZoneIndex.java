@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.world;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A packed R-tree of zones. The tree is bulk loaded with sort tile recursive
+ * packing which groups zones that are close on the x and z axis into nodes of
+ * up to {@link #NODE_SIZE} entries, then does the same for the nodes until there
+ * is a single root.
+ * <p>
+ * Zones and nodes are stored together as entries in flat arrays. The zones come
+ * first, followed by each level of nodes, so an entry is a zone if its index is
+ * less than the number of zones. The index is never changed once it's built and
+ * a query only walks the nodes that contain the point without creating anything.
+ */
+final class ZoneIndex {
+
+    static final ZoneIndex EMPTY = new ZoneIndex(new ArrayList<>());
+    private static final int NODE_SIZE = 16;
+
+    private final TemperatureZone[] zones;
+    // Bounds of every entry stored as min x, y, z then max x, y, z.
+    private final int[] bounds;
+    // Range of child entries of each node, indexed from the first node.
+    private final int[] childStart;
+    private final int[] childEnd;
+    private final int root;
+
+    ZoneIndex(Collection<TemperatureZone> input) {
+        List<int[]> level = new ArrayList<>();
+        List<int[]> entries = new ArrayList<>();
+        TemperatureZone[] source = input.toArray(new TemperatureZone[0]);
+        for (int i = 0; i < source.length; i++) {
+            TemperatureZone zone = source[i];
+            level.add(new int[] {zone.getMinX(), zone.getMinY(), zone.getMinZ(),
+                    zone.getMaxX(), zone.getMaxY(), zone.getMaxZ(), i, 0});
+        }
+
+        // Pack each level into the next until there is only the root left.
+        zones = new TemperatureZone[source.length];
+        boolean leaves = true;
+        while (!level.isEmpty()) {
+            pack(level);
+            int first = entries.size();
+            for (int[] entry : level) {
+                if (leaves) zones[entries.size()] = source[entry[6]];
+                entries.add(entry);
+            }
+            leaves = false;
+            if (level.size() == 1 && first >= zones.length) break;
+
+            List<int[]> parents = new ArrayList<>();
+            for (int start = first; start < entries.size(); start += NODE_SIZE) {
+                int end = Math.min(start + NODE_SIZE, entries.size());
+                int[] node = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+                        Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE, start, end};
+                for (int i = start; i < end; i++) {
+                    int[] child = entries.get(i);
+                    for (int k = 0; k < 3; k++) {
+                        node[k] = Math.min(node[k], child[k]);
+                        node[k + 3] = Math.max(node[k + 3], child[k + 3]);
+                    }
+                }
+                parents.add(node);
+            }
+            level = parents;
+        }
+
+        int nodes = entries.size() - zones.length;
+        bounds = new int[entries.size() * 6];
+        childStart = new int[nodes];
+        childEnd = new int[nodes];
+        for (int i = 0; i < entries.size(); i++) {
+            int[] entry = entries.get(i);
+            System.arraycopy(entry, 0, bounds, i * 6, 6);
+            if (i >= zones.length) {
+                childStart[i - zones.length] = entry[6];
+                childEnd[i - zones.length] = entry[7];
+            }
+        }
+        root = entries.size() - 1;
+    }
+
+    /**
+     * Orders the entries of a level so every run of {@link #NODE_SIZE} entries is
+     * close together. The entries are split into vertical slices along the x axis
+     * and each slice is sorted along the z axis.
+     */
+    private static void pack(List<int[]> level) {
+        int groups = (level.size() + NODE_SIZE - 1) / NODE_SIZE;
+        int slice = (int) Math.ceil(Math.sqrt(groups)) * NODE_SIZE;
+        level.sort(Comparator.comparingLong(e -> (long) e[0] + e[3]));
+        for (int start = 0; start < level.size(); start += slice) {
+            int end = Math.min(start + slice, level.size());
+            level.subList(start, end).sort(Comparator.comparingLong(e -> (long) e[2] + e[5]));
+        }
+    }
+
+    /**
+     * Adds every zone that contains a block to a sample.
+     *
+     * @param x      x block position.
+     * @param y      y block position.
+     * @param z      z block position.
+     * @param sample sample to add the zones to.
+     */
+    void query(int x, int y, int z, ZoneSample sample) {
+        if (root >= 0) visit(root, x, y, z, sample);
+    }
+
+    private void visit(int entry, int x, int y, int z, ZoneSample sample) {
+        int b = entry * 6;
+        if (x < bounds[b] || y < bounds[b + 1] || z < bounds[b + 2]
+                || x > bounds[b + 3] || y > bounds[b + 4] || z > bounds[b + 5]) return;
+        if (entry < zones.length) {
+            sample.accept(zones[entry]);
+            return;
+        }
+        int node = entry - zones.length;
+        for (int child = childStart[node]; child < childEnd[node]; child++) {
+            visit(child, x, y, z, sample);
+        }
+    }
+
+    /**
+     * @return how many zones are in the index.
+     */
+    int size() {
+        return zones.length;
+    }
+}
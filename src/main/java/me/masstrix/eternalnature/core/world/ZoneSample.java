@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.world;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The combined effect of every zone at a point. A sample is reused between
+ * queries so looking up zones does not create any objects.
+ */
+public final class ZoneSample {
+
+    private double offset;
+    private double climate = Double.NaN;
+    private int climatePriority;
+    private int count;
+    private final List<TemperatureZone> zones;
+
+    public ZoneSample() {
+        this(false);
+    }
+
+    /**
+     * @param keepZones should the zones found be kept so they can be listed
+     *                  with {@link #getZones()}.
+     */
+    public ZoneSample(boolean keepZones) {
+        this.zones = keepZones ? new ArrayList<>() : null;
+    }
+
+    /**
+     * Clears the sample so it can be used for another query.
+     */
+    public void reset() {
+        offset = 0;
+        climate = Double.NaN;
+        climatePriority = 0;
+        count = 0;
+        if (zones != null) zones.clear();
+    }
+
+    void accept(TemperatureZone zone) {
+        count++;
+        if (zones != null) zones.add(zone);
+        offset += zone.getOffset();
+        if (zone.hasClimate() && (Double.isNaN(climate) || zone.getPriority() > climatePriority)) {
+            climate = zone.getClimate();
+            climatePriority = zone.getPriority();
+        }
+    }
+
+    /**
+     * @return the sum of the offsets of all the zones.
+     */
+    public double getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return if any of the zones has a fixed climate.
+     */
+    public boolean hasClimate() {
+        return !Double.isNaN(climate);
+    }
+
+    /**
+     * @return the fixed climate of the zone with the highest priority or NaN if
+     *         none of the zones have one.
+     */
+    public double getClimate() {
+        return climate;
+    }
+
+    /**
+     * @return how many zones the point is in.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the zones the point is in, or an empty list if the sample does
+     *         not keep its zones.
+     */
+    public List<TemperatureZone> getZones() {
+        return zones == null ? Collections.emptyList() : Collections.unmodifiableList(zones);
+    }
+}
@@ -20,12 +20,18 @@ import me.masstrix.eternalnature.EternalNature;
 import me.masstrix.eternalnature.api.EternalUser;
 import me.masstrix.eternalnature.config.ConfigOption;
 import me.masstrix.eternalnature.core.HeightGradient;
+import me.masstrix.eternalnature.core.UserWorker;
 import me.masstrix.eternalnature.core.temperature.*;
 import me.masstrix.eternalnature.config.StatusRenderMethod;
 import me.masstrix.eternalnature.config.SystemConfig;
+import me.masstrix.eternalnature.core.world.EntityGrid;
+import me.masstrix.eternalnature.core.world.Room;
+import me.masstrix.eternalnature.core.world.SampleCache;
 import me.masstrix.eternalnature.core.world.TemperatureScanner;
+import me.masstrix.eternalnature.core.world.TemperatureZones;
 import me.masstrix.eternalnature.core.world.WorldData;
 import me.masstrix.eternalnature.core.world.WorldProvider;
+import me.masstrix.eternalnature.core.world.ZoneSample;
 import me.masstrix.eternalnature.listeners.DeathListener;
 import me.masstrix.eternalnature.util.*;
 import me.masstrix.lang.langEngine.LanguageEngine;
@@ -33,7 +39,6 @@ import net.md_5.bungee.api.ChatMessageType;
 import net.md_5.bungee.api.chat.TextComponent;
 import org.bukkit.*;
 import org.bukkit.block.Block;
-import org.bukkit.block.data.Waterlogged;
 import org.bukkit.boss.BarColor;
 import org.bukkit.boss.BarStyle;
 import org.bukkit.boss.BossBar;
@@ -58,6 +63,7 @@ public class UserData implements EternalUser {
 
     private static final int dehydrateChance = 500;
     private static final int dehydrateChanceRange = 50;
+    private static final long equipmentResync = 10000;
 
     private SystemConfig config;
     private EternalNature plugin;
@@ -70,6 +76,7 @@ public class UserData implements EternalUser {
     private BossBar hydrationBar, tempBar;
     private UUID id;
     private double temperature = 0, tempExact = 0;
+    private long lastProgressTick = -1;
     private double hydration = 20; // max is 20
     private float distanceWalked;
     private int distanceNextThirst;
@@ -80,6 +87,18 @@ public class UserData implements EternalUser {
     private Vector motion = new Vector();
     private boolean inMotion;
     private long lastMovementCheck = 0;
+    private double equipmentEmission;
+    private boolean equipmentChanged = true;
+    private int equipmentRevision;
+    private long equipmentUpdated;
+    private final ZoneSample zoneSample = new ZoneSample();
+    private double bodyHeat;
+    private double bodyHeatRadius;
+    private double bodyHeatAmount;
+    private final EntityGrid.Visitor bodyHeatVisitor = (entity, d2) -> {
+        if (entity.getUniqueId().equals(id) || entity.isDead()) return;
+        bodyHeat += bodyHeatAmount * (1 - Math.sqrt(d2) / bodyHeatRadius);
+    };
 
     public UserData(EternalNature plugin, UUID id) {
         this.id = id;
@@ -107,6 +126,54 @@ public class UserData implements EternalUser {
         distanceNextThirst = MathUtil.randomInt(dehydrateChance, dehydrateChance + dehydrateChanceRange);
     }
 
+    /**
+     * @return the players temperature scanner or null if it has not been
+     *         created yet.
+     */
+    public TemperatureScanner getTemperatureScanner() {
+        return tempScanner;
+    }
+
+    /**
+     * Marks the players equipment as changed. The temperature emitted from their
+     * armor and held items will be recalculated on the next temperature update.
+     */
+    public void updateEquipment() {
+        equipmentChanged = true;
+    }
+
+    /**
+     * Calculates the temperature emitted from the armor a player is wearing
+     * and the items they are holding.
+     *
+     * @param player player to calculate for.
+     * @param temps  temperature data to get emissions from.
+     * @return the combined emission of the players equipment.
+     */
+    private double calculateEquipmentEmission(Player player, TemperatureSnapshot temps) {
+        double emission = 0;
+
+        // Add armor to temp.
+        ItemStack[] armor = player.getEquipment().getArmorContents();
+        for (ItemStack i : armor) {
+            if (i == null) continue;
+            emission += temps.getEmission(i.getType(), TempModifierType.CLOTHING);
+        }
+
+        // Add temperature depending on what the player is holding
+        Material mainHand = player.getInventory().getItemInMainHand().getType();
+        Material offHand = player.getInventory().getItemInOffHand().getType();
+        if (mainHand != Material.AIR) {
+            double mainTemp = temps.getEmission(mainHand, TempModifierType.BLOCK);
+            emission += mainTemp / 10;
+        }
+        if (offHand != Material.AIR) {
+            double offTemp = temps.getEmission(offHand, TempModifierType.BLOCK);
+            emission += offTemp / 10;
+        }
+        return emission;
+    }
+
     /**
      * Sets the players cached motion.
      *
@@ -177,7 +244,8 @@ public class UserData implements EternalUser {
         // Create a region scanner if one has not been made already.
         if (tempScanner == null) {
             this.tempScanner = new TemperatureScanner(plugin, this, player);
-            this.tempScanner.setScanScale(11, 5);
+            this.tempScanner.setScanScale(config.getInt(ConfigOption.TEMPERATURE_SCAN_AREA),
+                    config.getInt(ConfigOption.TEMPERATURE_SCAN_HEIGHT));
         }
 
         WorldProvider provider = plugin.getEngine().getWorldProvider();
@@ -187,6 +255,9 @@ public class UserData implements EternalUser {
         // Updates the players temperature and applies damage to the player
         // if damage is enabled.
         if (config.isEnabled(ConfigOption.TEMPERATURE_ENABLED)) {
+            // Get the chunks ahead of the player ready before they reach them.
+            provider.getPrefetcher().prefetch(worldData, player.getLocation(), getMotion());
+
             // Update the players temperature
             updateTemperature(false);
 
@@ -316,6 +387,12 @@ public class UserData implements EternalUser {
             // Append debug info for temperature
             if (debugEnabled) {
                 text += " &d(exact: " + MathUtil.round(tempExact, 2) + ")";
+                WorldData world = plugin.getEngine().getWorldProvider().getWorld(player.getWorld());
+                Location loc = player.getLocation();
+                Room room = world == null ? null : world.getRoom(loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+                if (room != null) {
+                    text += " &d(room: " + room.getVolume() + ", openings: " + room.getOpenings() + ")";
+                }
             }
 
             if (config.getRenderMethod(ConfigOption.TEMPERATURE_BAR_STYLE) == StatusRenderMethod.BOSSBAR) {
@@ -471,15 +548,7 @@ public class UserData implements EternalUser {
      * @return if the player is in water.
      */
     private boolean isBlockWater(Block block) {
-        switch (block.getType()) {
-            case WATER:
-            case SEAGRASS:
-            case TALL_SEAGRASS:
-            case KELP_PLANT:
-                return true;
-        }
-        return block.getBlockData() instanceof Waterlogged
-                && ((((Waterlogged) block.getBlockData()).isWaterlogged()));
+        return WorldData.isWater(block);
     }
 
     /**
@@ -576,33 +645,49 @@ public class UserData implements EternalUser {
 
         Location loc = player.getLocation();
         Temperatures tempData = worldData.getTemperatures();
+        TemperatureSnapshot temps = tempData.getSnapshot();
 
         // Handle temperature ticking.
         boolean inWater = isBlockWater(loc.getBlock());
         double emission = 0;
 
+        // Players close to each other share samples so a crowd only
+        // scans each area once.
+        SampleCache samples = worldData.getSampleCache();
+        long now = System.currentTimeMillis();
+        long ttl = config.getInt(ConfigOption.TEMPERATURE_SAMPLE_TTL);
+        int x = loc.getBlockX(), y = loc.getBlockY(), z = loc.getBlockZ();
+
         // Add nearby block temperature if enabled.
         if (config.isEnabled(ConfigOption.TEMPERATURE_USE_BLOCKS)) {
-            if (forceNew) tempScanner.quickUpdate();
-            else tempScanner.tick();
-            emission += tempScanner.getTemperatureEmission();
+            // Use the simulated heat if it is enabled and has reached this chunk.
+            double blocks = config.isEnabled(ConfigOption.TEMPERATURE_SIMULATION)
+                    ? worldData.getHeatField().getHeat(x, y, z) : Double.NaN;
+            if (Double.isNaN(blocks) && !forceNew) blocks = samples.getBlockEmission(x, y, z, now, ttl);
+            if (Double.isNaN(blocks)) {
+                // The scanner shares its result in the cache once a scan is applied.
+                if (forceNew) tempScanner.quickUpdate();
+                else tempScanner.tick();
+                blocks = tempScanner.getTemperatureEmission();
+            }
+            emission += blocks;
         }
 
         // Add average nearby biome temperature if enabled
         if (config.isEnabled(ConfigOption.TEMPERATURE_USE_BIOMES)) {
-            int x = loc.getBlockX(), y = loc.getBlockY(), z = loc.getBlockZ();
-            emission += worldData.getBlockAmbientTemperature(x, y, z);
+            double ambient = samples.getAmbient(x, y, z, now, ttl);
+            if (Double.isNaN(ambient)) {
+                ambient = worldData.getBlockAmbientTemperature(x, y, z);
+                samples.putAmbient(x, y, z, ambient, now, ttl);
+            }
+            emission += ambient;
         }
 
         // Add environmental modifiers if enabled.
         if (config.isEnabled(ConfigOption.TEMPERATURE_USE_ENVIRO)) {
             // If the player is swimming, subtract temperature from depth.
             if (inWater) {
-                int height = 0;
-                for (int i = 1; i < 30; i++) {
-                    if (!isBlockWater(loc.getBlock().getRelative(0, i, 0))) break;
-                    height++;
-                }
+                int height = Math.min(worldData.getWaterDepth(loc.getBlock()), 29);
                 double depthSub = (double) height / 30D * 4;
                 emission -= depthSub;
             }
@@ -614,26 +699,38 @@ public class UserData implements EternalUser {
             }
         }
 
+        // Zones can replace the climate and add an offset to it.
+        TemperatureZones zones = worldData.getZones();
+        if (zones.size() > 0) {
+            zoneSample.reset();
+            zones.sample(x, y, z, zoneSample);
+            if (zoneSample.hasClimate()) emission = zoneSample.getClimate();
+            emission += zoneSample.getOffset();
+        }
+
+        // Players and mobs close by give off body heat. Closer ones give off more.
+        bodyHeatRadius = config.getDouble(ConfigOption.TEMPERATURE_BODY_HEAT_RADIUS);
+        if (config.isEnabled(ConfigOption.TEMPERATURE_BODY_HEAT) && bodyHeatRadius > 0) {
+            EntityGrid grid = worldData.getEntityGrid();
+            grid.update(player, loc);
+            bodyHeat = 0;
+            bodyHeatAmount = config.getDouble(ConfigOption.TEMPERATURE_BODY_HEAT_AMOUNT);
+            grid.forEachWithin(loc.getX(), loc.getY(), loc.getZ(), bodyHeatRadius, bodyHeatVisitor);
+            emission += Math.min(bodyHeat, config.getDouble(ConfigOption.TEMPERATURE_BODY_HEAT_MAX));
+        }
+
         // Add item based temperatures if enabled.
         if (config.isEnabled(ConfigOption.TEMPERATURE_USE_ITEMS)) {
-            // Add armor to temp.
-            ItemStack[] armor = player.getEquipment().getArmorContents();
-            for (ItemStack i : armor) {
-                if (i == null) continue;
-                emission += tempData.getEmission(i.getType(), TempModifierType.CLOTHING);
-            }
-
-            // Add temperature depending on what the player is holding
-            Material mainHand = player.getInventory().getItemInMainHand().getType();
-            Material offHand = player.getInventory().getItemInOffHand().getType();
-            if (mainHand != Material.AIR) {
-                double mainTemp = tempData.getEmission(mainHand, TempModifierType.BLOCK);
-                emission += mainTemp / 10;
-            }
-            if (offHand != Material.AIR) {
-                double offTemp = tempData.getEmission(mainHand, TempModifierType.BLOCK);
-                emission += offTemp / 10;
+            // Only look at the players items again if they have changed, the
+            // temperature data was reloaded or the player changed worlds.
+            if (equipmentChanged || equipmentRevision != temps.getRevision()
+                    || now - equipmentUpdated > equipmentResync) {
+                equipmentEmission = calculateEquipmentEmission(player, temps);
+                equipmentRevision = temps.getRevision();
+                equipmentUpdated = now;
+                equipmentChanged = false;
             }
+            emission += equipmentEmission;
         }
 
         if (!Double.isInfinite(emission) && !Double.isNaN(emission)) {
@@ -655,32 +752,61 @@ public class UserData implements EternalUser {
     }
 
     /**
-     * Gradually updates the temperature to get to the exact temperature.
+     * Gradually updates the temperature to get to the exact temperature. Each
+     * update closes a part of the gap, capped at the max change. The number of
+     * updates since the last one is worked out from the ticks that have passed
+     * so the players temperature ends up the same however often this is called.
      *
      * @param inWater is the player currently in water.
      */
     private void progressTemperature(boolean inWater) {
+        long tick = plugin.getEngine().getUserWorker().getTicks();
+        double steps = lastProgressTick < 0 ? 1
+                : (double) (tick - lastProgressTick) / UserWorker.UPDATE_INTERVAL;
+        lastProgressTick = tick;
+
         // Stop updating temperature if is already exactly the same as
         // the expected value.
-        if (temperature == tempExact) return;
+        if (temperature == tempExact || steps <= 0) return;
         if (!config.isEnabled(ConfigOption.TEMPERATURE_ENABLED)) return;
 
         // Change players temperature gradually
         double diff = MathUtil.diff(this.tempExact, this.temperature);
-        if (diff > 0.09) {
-            int division = 30;
-            if (inWater && tempExact < temperature) {
-                division = 10;
-            }
-            int maxDelta = config.getInt(ConfigOption.TEMPERATURE_MAX_DELTA);
-            double delta = diff / division;
-            if (delta > maxDelta) delta = maxDelta;
-            if (this.tempExact > this.temperature) this.temperature += delta;
-            else this.temperature -= delta;
-        } else if (diff < 0.1) {
-            // stop trying to round temperature.
+        int division = 30;
+        if (inWater && tempExact < temperature) {
+            division = 10;
+        }
+        int maxDelta = config.getInt(ConfigOption.TEMPERATURE_MAX_DELTA);
+
+        // The temperature is snapped once the gap is small at the start of an update.
+        if (remainingGap(diff, division, maxDelta, Math.max(0, steps - 1)) <= 0.09) {
             temperature = tempExact;
+            return;
+        }
+        double gap = remainingGap(diff, division, maxDelta, steps);
+        if (this.tempExact > this.temperature) this.temperature = tempExact - gap;
+        else this.temperature = tempExact + gap;
+    }
+
+    /**
+     * Returns the gap left after a number of updates. Each update takes off a
+     * part of the gap unless that's more than the max change, in which case the
+     * max change is taken off instead.
+     *
+     * @param gap      starting gap between the temperatures.
+     * @param division part of the gap each update takes off.
+     * @param maxDelta max change of each update.
+     * @param steps    number of updates.
+     * @return the gap after all the updates.
+     */
+    static double remainingGap(double gap, int division, double maxDelta, double steps) {
+        double capped = maxDelta * division;
+        if (gap > capped && maxDelta > 0) {
+            double linear = Math.min(steps, Math.ceil((gap - capped) / maxDelta));
+            gap -= linear * maxDelta;
+            steps -= linear;
         }
+        return gap * Math.pow(1 - 1D / division, steps);
     }
 
     /**
@@ -19,30 +19,40 @@ package me.masstrix.eternalnature.listeners;
 import me.masstrix.eternalnature.EternalNature;
 import me.masstrix.eternalnature.config.ConfigOption;
 import me.masstrix.eternalnature.config.SystemConfig;
+import me.masstrix.eternalnature.core.world.ChunkSection;
 import me.masstrix.eternalnature.core.world.PlantType;
 import me.masstrix.eternalnature.core.world.WaterfallEmitter;
+import me.masstrix.eternalnature.core.world.WorldProvider;
 import org.bukkit.*;
 import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
 import org.bukkit.block.data.Ageable;
 import org.bukkit.block.data.BlockData;
 import org.bukkit.block.data.Levelled;
+import org.bukkit.entity.ThrownPotion;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
-import org.bukkit.event.block.BlockBreakEvent;
-import org.bukkit.event.block.BlockFadeEvent;
-import org.bukkit.event.block.BlockFromToEvent;
-import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.block.*;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.entity.ProjectileHitEvent;
+import org.bukkit.event.inventory.FurnaceBurnEvent;
 import org.bukkit.event.player.PlayerBucketEmptyEvent;
 import org.bukkit.event.player.PlayerBucketFillEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.scheduler.BukkitRunnable;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 public class BlockListener implements Listener {
 
+    // Ticks it takes a piston to finish moving its blocks.
+    private static final int pistonDelay = 3;
+
     private SystemConfig config;
     private EternalNature plugin;
     private List<WaterfallEmitter> locs = new ArrayList<>();
@@ -65,13 +75,65 @@ public class BlockListener implements Listener {
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlace(BlockPlaceEvent event) {
         if (event.isCancelled()) return;
-        //calculateArea(event.getBlockPlaced());
+        WorldProvider provider = plugin.getEngine().getWorldProvider();
+        provider.getWorld(event.getBlock().getWorld()).updateBlock(event.getBlockPlaced());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void on(FurnaceBurnEvent event) {
+        if (event.isCancelled()) return;
+        // The furnace is lit after the event and goes out once the fuel has burnt
+        // unless more fuel was burnt by then, which fires this event again.
+        Block block = event.getBlock();
+        updateBlockLater(block);
+        updateBlocksLater(Collections.singletonList(block), event.getBurnTime() + 1);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void on(PlayerInteractEvent event) {
+        // Campfires are lit with flint and steel or fire charges and put out
+        // with shovels.
+        Block block = event.getClickedBlock();
+        if (event.getAction() != Action.RIGHT_CLICK_BLOCK || block == null) return;
+        if (block.getType() == Material.CAMPFIRE) {
+            updateBlockLater(block);
+        } else if (ChunkSection.isOpenable(block.getType())) {
+            updateOpenableLater(block);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void on(BlockRedstoneEvent event) {
+        Block block = event.getBlock();
+        if ((event.getOldCurrent() > 0) != (event.getNewCurrent() > 0)
+                && ChunkSection.isOpenable(block.getType())) {
+            updateOpenableLater(block);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void on(ProjectileHitEvent event) {
+        Block hit = event.getHitBlock();
+        if (hit == null) return;
+        // Burning arrows light campfires and splash potions put out the ones
+        // around where they land.
+        int range = event.getEntity() instanceof ThrownPotion ? 1 : 0;
+        List<Block> campfires = new ArrayList<>();
+        for (int x = -range; x <= range; x++) {
+            for (int y = -range; y <= range; y++) {
+                for (int z = -range; z <= range; z++) {
+                    Block block = hit.getRelative(x, y, z);
+                    if (block.getType() == Material.CAMPFIRE) campfires.add(block);
+                }
+            }
+        }
+        updateBlocksLater(campfires, 1);
     }
 
     @EventHandler(priority = EventPriority.MONITOR)
     public void onBreak(BlockBreakEvent event) {
         if (event.isCancelled()) return;
-        //calculateArea(event.getBlock());
+        updateBlock(event.getBlock(), Material.AIR);
 
         Block block = event.getBlock();
         Location loc = block.getLocation();
@@ -117,19 +179,24 @@ public class BlockListener implements Listener {
     @EventHandler(priority = EventPriority.MONITOR)
     public void onLiquid(PlayerBucketEmptyEvent event) {
         if (event.isCancelled()) return;
-        //calculateArea(event.getBlockClicked().getLocation());
+        Block clicked = event.getBlockClicked();
+        updateBlockLater(clicked);
+        updateBlockLater(clicked.getRelative(event.getBlockFace()));
     }
 
     @EventHandler(priority = EventPriority.MONITOR)
     public void on(PlayerBucketFillEvent event) {
         if (event.isCancelled()) return;
-        //calculateArea(event.getBlockClicked().getLocation());
+        Block clicked = event.getBlockClicked();
+        updateBlockLater(clicked);
+        updateBlockLater(clicked.getRelative(event.getBlockFace()));
     }
 
     @EventHandler(priority = EventPriority.MONITOR)
     public void on(BlockFromToEvent event) {
         if (event.isCancelled()) return;
         World world = event.getToBlock().getWorld();
+        updateBlock(event.getToBlock(), event.getBlock().getType());
 
         if (event.getBlock().getType() == Material.WATER) {
             new BukkitRunnable() {
@@ -144,10 +211,129 @@ public class BlockListener implements Listener {
     @EventHandler(priority = EventPriority.MONITOR)
     public void on(BlockFadeEvent event) {
         if (event.isCancelled()) return;
-        //calculateArea(event.getBlock());
+        updateBlock(event.getBlock(), event.getNewState().getType());
     }
 
-    private void calculateArea(Block block) {
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void on(BlockFormEvent event) {
+        if (event.isCancelled()) return;
+        updateBlockLater(event.getBlock());
+    }
 
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void on(BlockSpreadEvent event) {
+        if (event.isCancelled()) return;
+        updateBlockLater(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void on(BlockIgniteEvent event) {
+        if (event.isCancelled()) return;
+        updateBlockLater(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void on(BlockBurnEvent event) {
+        if (event.isCancelled()) return;
+        updateBlockLater(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void on(BlockExplodeEvent event) {
+        if (event.isCancelled()) return;
+        updateBlocksLater(new ArrayList<>(event.blockList()), 1);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void on(EntityExplodeEvent event) {
+        if (event.isCancelled()) return;
+        updateBlocksLater(new ArrayList<>(event.blockList()), 1);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void on(BlockPistonExtendEvent event) {
+        if (event.isCancelled()) return;
+        updatePistonLater(event, event.getBlocks());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void on(BlockPistonRetractEvent event) {
+        if (event.isCancelled()) return;
+        updatePistonLater(event, event.getBlocks());
+    }
+
+    /**
+     * Updates every block a piston moves along with where they are moved to once
+     * the piston has finished moving.
+     *
+     * @param event piston event.
+     * @param moved blocks moved by the piston.
+     */
+    private void updatePistonLater(BlockPistonEvent event, List<Block> moved) {
+        BlockFace direction = event.getDirection();
+        List<Block> blocks = new ArrayList<>(moved.size() * 2 + 1);
+        blocks.add(event.getBlock().getRelative(direction));
+        for (Block block : moved) {
+            blocks.add(block);
+            blocks.add(block.getRelative(direction));
+        }
+        updateBlocksLater(blocks, pistonDelay);
+    }
+
+    /**
+     * Updates a door, trapdoor or fence gate after it has been opened or closed.
+     * Both halves of a door are updated.
+     *
+     * @param block block that was opened or closed.
+     */
+    private void updateOpenableLater(Block block) {
+        List<Block> blocks = new ArrayList<>(2);
+        blocks.add(block);
+        for (BlockFace face : new BlockFace[] {BlockFace.UP, BlockFace.DOWN}) {
+            Block half = block.getRelative(face);
+            if (half.getType() == block.getType()) blocks.add(half);
+        }
+        updateBlocksLater(blocks, 1);
+    }
+
+    /**
+     * Updates a block in the worlds temperature index.
+     *
+     * @param block block that changed.
+     * @param type  new type of the block.
+     */
+    private void updateBlock(Block block, Material type) {
+        WorldProvider provider = plugin.getEngine().getWorldProvider();
+        provider.getWorld(block.getWorld()).updateBlock(block, type);
+    }
+
+    /**
+     * Updates a block in the worlds temperature index on the next tick. This is
+     * used for events where the blocks new type or state is not known until after
+     * the event has finished.
+     *
+     * @param block block that changed.
+     */
+    private void updateBlockLater(Block block) {
+        updateBlocksLater(Collections.singletonList(block), 1);
+    }
+
+    /**
+     * Updates blocks in the worlds temperature index after a delay.
+     *
+     * @param blocks blocks that changed.
+     * @param delay  ticks to wait before updating them.
+     */
+    private void updateBlocksLater(Collection<Block> blocks, long delay) {
+        if (blocks.isEmpty()) return;
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                WorldProvider provider = plugin.getEngine().getWorldProvider();
+                for (Block block : blocks) {
+                    provider.getWorld(block.getWorld()).updateBlock(block);
+                }
+            }
+        }.runTaskLater(plugin, delay);
     }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.listeners;
+
+import me.masstrix.eternalnature.EternalNature;
+import me.masstrix.eternalnature.core.world.WorldData;
+import me.masstrix.eternalnature.core.world.WorldProvider;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+
+public class ChunkListener implements Listener {
+
+    private EternalNature plugin;
+
+    public ChunkListener(EternalNature plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onLoad(ChunkLoadEvent event) {
+        WorldProvider provider = plugin.getEngine().getWorldProvider();
+        WorldData data = provider.getWorld(event.getWorld());
+        data.loadChunk(event.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onUnload(ChunkUnloadEvent event) {
+        WorldProvider provider = plugin.getEngine().getWorldProvider();
+        if (!provider.isLoaded(event.getWorld().getName())) return;
+        provider.getWorld(event.getWorld()).unloadChunk(event.getChunk());
+    }
+}
@@ -110,6 +110,22 @@ public class MathUtil {
         return v * v * v;
     }
 
+    /**
+     * Returns the greatest common divisor of two ints.
+     *
+     * @param a first value.
+     * @param b second value.
+     * @return the greatest common divisor of a and b.
+     */
+    public static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return Math.abs(a);
+    }
+
     /**
      * Rounds a double value to contain n decimal places.
      *
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.world;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Version of {@link EmissionKernel} that processes emitters in lanes using the
+ * {@code jdk.incubator.vector} API. Emitters left over after the last full set
+ * of lanes are handled by {@link ScalarEmissionKernel}. This class must only
+ * be loaded when the module is present.
+ */
+final class VectorEmissionKernel {
+
+    private static final VectorSpecies<Double> species = DoubleVector.SPECIES_PREFERRED;
+
+    private VectorEmissionKernel() {}
+
+    /**
+     * @return how many doubles are processed at once.
+     */
+    static int lanes() {
+        return species.length();
+    }
+
+    /**
+     * Gives the same result as the scalar version. The distance is added up in
+     * the same order and emitters at the center are blended back to a factor
+     * of one after the division.
+     *
+     * @see EmissionKernel#falloff(double[], double[], double[], double[], double[], double[], int)
+     */
+    static void falloff(double[] dx, double[] dy, double[] dz, double[] emission,
+                        double[] scalar, double[] out, int count) {
+        int bound = species.loopBound(count);
+        int i = 0;
+        for (; i < bound; i += species.length()) {
+            DoubleVector x = DoubleVector.fromArray(species, dx, i);
+            DoubleVector y = DoubleVector.fromArray(species, dy, i);
+            DoubleVector z = DoubleVector.fromArray(species, dz, i);
+            DoubleVector d2 = x.mul(x).add(y.mul(y)).add(z.mul(z));
+            VectorMask<Double> center = d2.eq(0);
+            DoubleVector factor = DoubleVector.fromArray(species, scalar, i)
+                    .div(d2).min(1).blend(1, center);
+            DoubleVector.fromArray(species, emission, i).mul(factor).intoArray(out, i);
+        }
+        ScalarEmissionKernel.falloff(dx, dy, dz, emission, scalar, out, i, count);
+    }
+
+    /**
+     * Values are added up lane by lane so the result can differ from the scalar
+     * version by rounding.
+     *
+     * @see EmissionKernel#sum(double[], int)
+     */
+    static double sum(double[] values, int count) {
+        int bound = species.loopBound(count);
+        int i = 0;
+        DoubleVector total = DoubleVector.zero(species);
+        for (; i < bound; i += species.length()) {
+            total = total.add(DoubleVector.fromArray(species, values, i));
+        }
+        return total.reduceLanes(VectorOperators.ADD) + ScalarEmissionKernel.sum(values, i, count);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.temperature;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimeTemperatureTest {
+
+    /**
+     * Largest change in temperature over one tick between any two neighbouring
+     * times, used to bound how far a table step can be from the curve.
+     */
+    private static double maxSlope(TimeTemperature temp) {
+        double max = 0;
+        for (int t = 0; t < TimeTemperature.TIME_IN_DAY; t++) {
+            max = Math.max(max, Math.abs(temp.getEmission(t + 1) - temp.getEmission(t)));
+        }
+        return max;
+    }
+
+    private static void assertMatches(TimeTemperature temp, int resolution) {
+        temp.compile(resolution);
+        double step = (double) TimeTemperature.TIME_IN_DAY / resolution;
+        double tolerance = maxSlope(temp) * Math.ceil(step) + 1e-4;
+        for (int t = 0; t < TimeTemperature.TIME_IN_DAY; t++) {
+            assertEquals("time " + t + " at resolution " + resolution,
+                    temp.getEmission(t), temp.getLocalTemp(t), tolerance);
+        }
+    }
+
+    @Test
+    public void tableMatchesInterpolation() {
+        TimeTemperature temp = new TimeTemperature()
+                .put(0, 10)
+                .put(6000, 25)
+                .put(12000, 30)
+                .put(18000, 15);
+        for (int resolution : new int[] {1, 24, 96, 240, 1000, TimeTemperature.TIME_IN_DAY}) {
+            assertMatches(temp, resolution);
+        }
+    }
+
+    @Test
+    public void tableMatchesInterpolationAcrossMidnight() {
+        TimeTemperature temp = new TimeTemperature()
+                .put(3000, -5)
+                .put(13000, 12)
+                .put(22000, 2);
+        assertMatches(temp, 240);
+    }
+
+    @Test
+    public void tableMatchesRandomDays() {
+        Random random = new Random(3);
+        for (int day = 0; day < 20; day++) {
+            TimeTemperature temp = new TimeTemperature();
+            int nodes = 2 + random.nextInt(6);
+            for (int n = 0; n < nodes; n++) {
+                temp.put(random.nextInt(TimeTemperature.TIME_IN_DAY), random.nextDouble() * 60 - 20);
+            }
+            assertMatches(temp, 1 + random.nextInt(480));
+        }
+    }
+
+    @Test
+    public void fullResolutionIsExact() {
+        TimeTemperature temp = new TimeTemperature()
+                .put(1000, 4)
+                .put(9000, 21)
+                .put(20000, 7);
+        temp.compile(TimeTemperature.TIME_IN_DAY);
+        for (int t = 0; t < TimeTemperature.TIME_IN_DAY; t++) {
+            assertEquals(temp.getEmission(t), temp.getLocalTemp(t), 1e-4);
+        }
+    }
+
+    @Test
+    public void singleTimeUsesFallback() {
+        TimeTemperature temp = new TimeTemperature().put(6000, 18);
+        temp.compile(240);
+        assertEquals(18, temp.getLocalTemp(0), 0);
+        assertEquals(18, temp.getLocalTemp(20000), 0);
+    }
+}
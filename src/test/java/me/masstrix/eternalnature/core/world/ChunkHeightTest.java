@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.core.world;
+
+import org.bukkit.Material;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ChunkHeightTest {
+
+    private static final int unknown = ChunkData.unknownHeight;
+
+    @Test
+    public void blockBelowUnknownColumnStaysUnknown() {
+        // A block placed in a cellar must not make everything above it exposed.
+        assertEquals(unknown, ChunkData.updateHeight(unknown, 20, Material.STONE));
+        assertEquals(unknown, ChunkData.updateHeight(unknown, 20, Material.AIR));
+    }
+
+    @Test
+    public void blockAboveTopRaisesHeight() {
+        assertEquals(71, ChunkData.updateHeight(64, 70, Material.STONE));
+        assertEquals(65, ChunkData.updateHeight(64, 64, Material.WATER));
+    }
+
+    @Test
+    public void blockBelowTopKeepsHeight() {
+        assertEquals(64, ChunkData.updateHeight(64, 40, Material.STONE));
+        assertEquals(64, ChunkData.updateHeight(64, 40, Material.AIR));
+    }
+
+    @Test
+    public void nonBlockingBlockDoesNotRaiseHeight() {
+        assertEquals(64, ChunkData.updateHeight(64, 64, Material.TORCH));
+        assertEquals(64, ChunkData.updateHeight(64, 70, Material.POPPY));
+    }
+
+    @Test
+    public void removingTopBlockMakesHeightUnknown() {
+        assertEquals(unknown, ChunkData.updateHeight(64, 63, Material.AIR));
+        assertEquals(unknown, ChunkData.updateHeight(64, 63, Material.TORCH));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 Matthew Denton
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.masstrix.eternalnature.data;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TemperatureConvergenceTest {
+
+    /**
+     * Steps the gap one update at a time the way the temperature used to be
+     * progressed before it was done in closed form.
+     */
+    private static double loop(double gap, int division, double maxDelta, int steps) {
+        for (int i = 0; i < steps; i++) {
+            double delta = gap / division;
+            if (delta > maxDelta) delta = maxDelta;
+            gap -= delta;
+        }
+        return gap;
+    }
+
+    @Test
+    public void closedFormMatchesLoop() {
+        Random random = new Random(25);
+        for (int i = 0; i < 10000; i++) {
+            double gap = random.nextDouble() * 100;
+            int division = random.nextBoolean() ? 30 : 10;
+            double maxDelta = 1 + random.nextInt(5);
+            int steps = random.nextInt(400);
+            double expected = loop(gap, division, maxDelta, steps);
+            assertEquals("gap " + gap + " division " + division + " max " + maxDelta + " steps " + steps,
+                    expected, UserData.remainingGap(gap, division, maxDelta, steps), 1e-9 * Math.max(1, gap));
+        }
+    }
+
+    @Test
+    public void splitStepsMatchOneCall() {
+        double gap = 80;
+        double once = UserData.remainingGap(gap, 30, 2, 50);
+        double split = gap;
+        for (int i = 0; i < 5; i++) {
+            split = UserData.remainingGap(split, 30, 2, 10);
+        }
+        assertEquals(once, split, 1e-9);
+    }
+
+    @Test
+    public void uncappedGapShrinksGeometrically() {
+        assertEquals(10 * Math.pow(29D / 30, 7), UserData.remainingGap(10, 30, 5, 7), 1e-12);
+    }
+
+    @Test
+    public void noStepsLeavesGap() {
+        assertEquals(42, UserData.remainingGap(42, 10, 1, 0), 0);
+    }
+}